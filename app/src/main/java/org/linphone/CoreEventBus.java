@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone;
+
+import android.os.Handler;
+import android.os.Looper;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.linphone.core.Call;
+import org.linphone.core.ChatMessage;
+import org.linphone.core.ChatRoom;
+import org.linphone.core.Core;
+import org.linphone.core.CoreListenerStub;
+import org.linphone.core.tools.Log;
+
+/**
+ * Listens to the chat rooms and calls related Core callbacks on behalf of the UI and groups the
+ * ones received during a short window into a single {@link ChangeSet}, delivered on the UI thread.
+ * This way a burst of messages only causes one refresh of the chat rooms list, unread counters or
+ * shortcuts instead of one per message.
+ */
+public class CoreEventBus {
+    private static final long COALESCING_WINDOW = 50; // ms
+
+    private final Handler mHandler;
+    private final CoreListenerStub mListener;
+    private final ArrayList<ChangesListener> mListeners;
+    private ChangeSet mPendingChanges;
+
+    private long mEventsCount;
+    private long mChangeSetsCount;
+
+    private final Runnable mFlushRunnable =
+            new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            };
+
+    public CoreEventBus() {
+        mHandler = new Handler(Looper.getMainLooper());
+        mListeners = new ArrayList<>();
+
+        mListener =
+                new CoreListenerStub() {
+                    @Override
+                    public void onMessageSent(Core core, ChatRoom room, ChatMessage message) {
+                        onChatRoomChanged(room, true, false);
+                    }
+
+                    @Override
+                    public void onMessageReceived(Core core, ChatRoom room, ChatMessage message) {
+                        onChatRoomChanged(room, true, false);
+                    }
+
+                    @Override
+                    public void onMessageReceivedUnableDecrypt(
+                            Core core, ChatRoom room, ChatMessage message) {
+                        onChatRoomChanged(room, true, false);
+                    }
+
+                    @Override
+                    public void onChatRoomRead(Core core, ChatRoom room) {
+                        onChatRoomChanged(room, false, false);
+                    }
+
+                    @Override
+                    public void onChatRoomSubjectChanged(Core core, ChatRoom room) {
+                        onChatRoomChanged(room, false, false);
+                    }
+
+                    @Override
+                    public void onChatRoomEphemeralMessageDeleted(Core core, ChatRoom room) {
+                        onChatRoomChanged(room, false, false);
+                    }
+
+                    @Override
+                    public void onChatRoomStateChanged(
+                            Core core, ChatRoom room, ChatRoom.State state) {
+                        if (state == ChatRoom.State.Created) {
+                            onChatRoomChanged(room, false, true);
+                        }
+                    }
+
+                    @Override
+                    public void onCallStateChanged(
+                            Core core, Call call, Call.State state, String message) {
+                        onCallChanged(call);
+                    }
+                };
+    }
+
+    public void start(Core core) {
+        core.addListener(mListener);
+    }
+
+    public void destroy(Core core) {
+        if (core != null) {
+            core.removeListener(mListener);
+        }
+        mHandler.removeCallbacks(mFlushRunnable);
+        synchronized (this) {
+            mPendingChanges = null;
+        }
+        Log.i(
+                "[Event Bus] "
+                        + mEventsCount
+                        + " events delivered in "
+                        + mChangeSetsCount
+                        + " change sets, "
+                        + getCollapsedEventsCount()
+                        + " refreshes collapsed");
+    }
+
+    /** Must be called from the UI thread. */
+    public void addListener(ChangesListener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    /** Must be called from the UI thread. */
+    public void removeListener(ChangesListener listener) {
+        mListeners.remove(listener);
+    }
+
+    public synchronized long getEventsCount() {
+        return mEventsCount;
+    }
+
+    public synchronized long getChangeSetsCount() {
+        return mChangeSetsCount;
+    }
+
+    /** Number of refreshes each subscriber was spared thanks to the coalescing. */
+    public synchronized long getCollapsedEventsCount() {
+        return mEventsCount - mChangeSetsCount;
+    }
+
+    private synchronized ChangeSet getPendingChanges() {
+        mEventsCount += 1;
+        if (mPendingChanges == null) {
+            mPendingChanges = new ChangeSet();
+            mHandler.postDelayed(mFlushRunnable, COALESCING_WINDOW);
+        }
+        return mPendingChanges;
+    }
+
+    private synchronized void onChatRoomChanged(
+            ChatRoom room, boolean messageExchanged, boolean created) {
+        ChangeSet changes = getPendingChanges();
+        String key = getChatRoomKey(room);
+        changes.mChatRooms.put(key, room);
+        if (messageExchanged) {
+            changes.mChatRoomsWithNewMessages.put(key, room);
+        }
+        if (created) {
+            changes.mCreatedChatRooms.put(key, room);
+        }
+    }
+
+    private synchronized void onCallChanged(Call call) {
+        ChangeSet changes = getPendingChanges();
+        String callId = call.getCallLog().getCallId();
+        if (callId == null) {
+            callId = call.getRemoteAddress().asStringUriOnly();
+        }
+        changes.mCalls.put(callId, call);
+    }
+
+    private void flush() {
+        ChangeSet changes;
+        synchronized (this) {
+            changes = mPendingChanges;
+            mPendingChanges = null;
+            if (changes == null) return;
+            mChangeSetsCount += 1;
+        }
+
+        // Copy the list in case a listener removes itself
+        for (ChangesListener listener : new ArrayList<>(mListeners)) {
+            listener.onChanges(changes);
+        }
+    }
+
+    private static String getChatRoomKey(ChatRoom room) {
+        return room.getLocalAddress().asStringUriOnly()
+                + "~"
+                + room.getPeerAddress().asStringUriOnly();
+    }
+
+    public static class ChangeSet {
+        private final Map<String, ChatRoom> mChatRooms = new LinkedHashMap<>();
+        private final Map<String, ChatRoom> mChatRoomsWithNewMessages = new LinkedHashMap<>();
+        private final Map<String, ChatRoom> mCreatedChatRooms = new LinkedHashMap<>();
+        private final Map<String, Call> mCalls = new LinkedHashMap<>();
+
+        /** Every chat room that had a message, was read, was created or had its subject changed. */
+        public Collection<ChatRoom> getChatRooms() {
+            return mChatRooms.values();
+        }
+
+        /** Chat rooms in which a message was sent or received. */
+        public Collection<ChatRoom> getChatRoomsWithNewMessages() {
+            return mChatRoomsWithNewMessages.values();
+        }
+
+        public Collection<ChatRoom> getCreatedChatRooms() {
+            return mCreatedChatRooms.values();
+        }
+
+        /** Calls whose state changed. */
+        public Collection<Call> getCalls() {
+            return mCalls.values();
+        }
+
+        public boolean hasChatRoomsChanges() {
+            return !mChatRooms.isEmpty();
+        }
+
+        public boolean hasCallsChanges() {
+            return !mCalls.isEmpty();
+        }
+    }
+
+    public interface ChangesListener {
+        void onChanges(ChangeSet changes);
+    }
+}
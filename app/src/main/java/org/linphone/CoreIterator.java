@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import org.linphone.core.Call;
+import org.linphone.core.ChatMessage;
+import org.linphone.core.ChatRoom;
+import org.linphone.core.Core;
+import org.linphone.core.CoreListenerStub;
+import org.linphone.core.ProxyConfig;
+import org.linphone.core.RegistrationState;
+import org.linphone.core.tools.Log;
+import org.linphone.utils.LatencyHistogram;
+
+/**
+ * Calls Core.iterate() periodically on the main looper, the thread every other Core call is made
+ * from since liblinphone isn't thread safe.
+ *
+ * <p>When adaptive mode is enabled the interval between two iterations depends on whether there is
+ * a call, whether the app is in foreground and how long ago the Core had network activity.
+ */
+public class CoreIterator {
+    private static final long ITERATE_INTERVAL_ACTIVE = 20; // ms
+    private static final long ITERATE_INTERVAL_BACKGROUND = 100; // ms
+    private static final long ITERATE_INTERVAL_IDLE = 250; // ms
+    // How long we keep iterating at full speed after network activity
+    private static final long NETWORK_ACTIVITY_DELAY = 5000; // ms
+    // How long without network activity before switching from background to idle interval
+    private static final long IDLE_DELAY = 60000; // ms
+
+    private final Core mCore;
+    private final boolean mAdaptive;
+    private final CoreListenerStub mListener;
+    private final LatencyHistogram mIterateHistogram;
+    private Handler mHandler;
+    private Runnable mIterateRunnable;
+    private volatile boolean mRunning;
+    private volatile boolean mForeground;
+    private volatile long mLastNetworkActivity;
+    private volatile long mInterval;
+    private long mExpectedNextIterate;
+    private long mStartTime;
+
+    private long mIterateCount;
+    private long mIterateTotalNanos;
+    private long mIterateMaxNanos;
+    private long mDriftTotalMillis;
+    private long mDriftMaxMillis;
+
+    public CoreIterator(Core core, boolean adaptive, boolean foreground) {
+        mCore = core;
+        mAdaptive = adaptive;
+        mForeground = foreground;
+        mInterval = ITERATE_INTERVAL_ACTIVE;
+        mIterateHistogram = new LatencyHistogram("Core iterate");
+
+        mListener =
+                new CoreListenerStub() {
+                    @Override
+                    public void onCallStateChanged(
+                            Core core, Call call, Call.State state, String message) {
+                        onNetworkActivity();
+                    }
+
+                    @Override
+                    public void onRegistrationStateChanged(
+                            Core core,
+                            ProxyConfig proxyConfig,
+                            RegistrationState state,
+                            String message) {
+                        onNetworkActivity();
+                    }
+
+                    @Override
+                    public void onMessageReceived(
+                            Core core, ChatRoom chatRoom, ChatMessage message) {
+                        onNetworkActivity();
+                    }
+
+                    @Override
+                    public void onNetworkReachable(Core core, boolean reachable) {
+                        onNetworkActivity();
+                    }
+                };
+    }
+
+    public synchronized void start() {
+        if (mRunning) return;
+
+        mHandler = new Handler(Looper.getMainLooper());
+
+        mIterateRunnable =
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mRunning) return;
+                        computeDrift();
+                        iterate();
+                        mInterval = computeInterval();
+                        // Post the next iteration once this one is done to avoid iterate from
+                        // being called in burst after cpu wake up
+                        mExpectedNextIterate = SystemClock.uptimeMillis() + mInterval;
+                        mHandler.postDelayed(this, mInterval);
+                    }
+                };
+        mCore.addListener(mListener);
+        mLastNetworkActivity = SystemClock.uptimeMillis();
+        mStartTime = SystemClock.uptimeMillis();
+        mExpectedNextIterate = mStartTime;
+        mRunning = true;
+        mHandler.post(mIterateRunnable);
+        Log.i("[Core Iterator] Started" + (mAdaptive ? " with adaptive interval" : ""));
+    }
+
+    public synchronized void stop() {
+        if (!mRunning) return;
+        mRunning = false;
+
+        mHandler.removeCallbacks(mIterateRunnable);
+        mCore.removeListener(mListener);
+        dumpStats();
+    }
+
+    public void setForeground(boolean foreground) {
+        mForeground = foreground;
+        if (foreground) {
+            wakeUp();
+        }
+    }
+
+    /** Switches back to the shortest interval, for example when network is about to be used. */
+    public void onNetworkActivity() {
+        mLastNetworkActivity = SystemClock.uptimeMillis();
+        if (!isCurrentThread()) {
+            wakeUp();
+        }
+    }
+
+    private synchronized void wakeUp() {
+        if (!mRunning || mInterval == ITERATE_INTERVAL_ACTIVE) return;
+        // Don't wait for the current interval to expire, next iteration will compute the new one
+        mHandler.removeCallbacks(mIterateRunnable);
+        mExpectedNextIterate = SystemClock.uptimeMillis();
+        mHandler.post(mIterateRunnable);
+    }
+
+    private long computeInterval() {
+        if (!mAdaptive || mForeground || mCore.getCallsNb() > 0) {
+            return ITERATE_INTERVAL_ACTIVE;
+        }
+
+        long sinceLastActivity = SystemClock.uptimeMillis() - mLastNetworkActivity;
+        if (sinceLastActivity < NETWORK_ACTIVITY_DELAY) {
+            return ITERATE_INTERVAL_ACTIVE;
+        } else if (sinceLastActivity < IDLE_DELAY) {
+            return ITERATE_INTERVAL_BACKGROUND;
+        }
+        return ITERATE_INTERVAL_IDLE;
+    }
+
+    private void computeDrift() {
+        long drift = SystemClock.uptimeMillis() - mExpectedNextIterate;
+        if (drift < 0) return;
+        mDriftTotalMillis += drift;
+        if (drift > mDriftMaxMillis) {
+            mDriftMaxMillis = drift;
+        }
+    }
+
+    /** Posts a runnable on the thread that iterates the Core. */
+    public void post(Runnable r) {
+        postDelayed(r, 0);
+    }
+
+    public void postDelayed(Runnable r, long delay) {
+        if (mHandler != null) {
+            mHandler.postDelayed(r, delay);
+        }
+    }
+
+    public boolean isCurrentThread() {
+        return mHandler != null && mHandler.getLooper() == Looper.myLooper();
+    }
+
+    private void iterate() {
+        long start = SystemClock.elapsedRealtimeNanos();
+        mCore.iterate();
+        long duration = SystemClock.elapsedRealtimeNanos() - start;
+
+        mIterateHistogram.record(duration / 1000);
+        mIterateCount += 1;
+        mIterateTotalNanos += duration;
+        if (duration > mIterateMaxNanos) {
+            mIterateMaxNanos = duration;
+        }
+    }
+
+    /* Metrics */
+
+    public long getIterateCount() {
+        return mIterateCount;
+    }
+
+    public long getAverageIterateDurationMicros() {
+        if (mIterateCount == 0) return 0;
+        return mIterateTotalNanos / mIterateCount / 1000;
+    }
+
+    public long getMaxIterateDurationMicros() {
+        return mIterateMaxNanos / 1000;
+    }
+
+    /** Duration of each iteration, including the listeners callbacks it triggered. */
+    public LatencyHistogram getIterateHistogram() {
+        return mIterateHistogram;
+    }
+
+    public long getCurrentIntervalMillis() {
+        return mInterval;
+    }
+
+    /** Average delay between the time an iteration was scheduled and the time it really ran. */
+    public long getAverageDriftMillis() {
+        if (mIterateCount == 0) return 0;
+        return mDriftTotalMillis / mIterateCount;
+    }
+
+    public long getMaxDriftMillis() {
+        return mDriftMaxMillis;
+    }
+
+    /** Number of iterations (and so wakeups) avoided compared to a fixed 20 ms interval. */
+    public long getIterationsSaved() {
+        long elapsed = SystemClock.uptimeMillis() - mStartTime;
+        return Math.max(0, elapsed / ITERATE_INTERVAL_ACTIVE - mIterateCount);
+    }
+
+    public void dumpStats() {
+        Log.i(
+                "[Core Iterator] "
+                        + mIterateCount
+                        + " iterations, average "
+                        + getAverageIterateDurationMicros()
+                        + "us, max "
+                        + getMaxIterateDurationMicros()
+                        + "us, current interval "
+                        + mInterval
+                        + "ms, average drift "
+                        + getAverageDriftMillis()
+                        + "ms, max drift "
+                        + mDriftMaxMillis
+                        + "ms, iterations saved "
+                        + getIterationsSaved());
+    }
+}
@@ -23,6 +23,7 @@ import static android.content.Intent.ACTION_MAIN;
 
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.os.Build;
 import android.provider.ContactsContract;
 import java.util.ArrayList;
@@ -37,53 +38,43 @@ import org.linphone.core.Core;
 import org.linphone.core.CoreListenerStub;
 import org.linphone.core.Factory;
 import org.linphone.core.GlobalState;
-import org.linphone.core.LogLevel;
-import org.linphone.core.LoggingService;
-import org.linphone.core.LoggingServiceListener;
+import org.linphone.core.ProxyConfig;
+import org.linphone.core.RegistrationState;
 import org.linphone.core.tools.Log;
 import org.linphone.mediastream.Version;
 import org.linphone.notifications.NotificationsManager;
 import org.linphone.service.LinphoneService;
 import org.linphone.settings.LinphonePreferences;
+import org.linphone.utils.AsyncJavaLogger;
 import org.linphone.utils.DeviceUtils;
+import org.linphone.utils.LatencyHistogram;
 import org.linphone.utils.LinphoneUtils;
+import org.linphone.utils.MainThreadWatchdog;
 import org.linphone.utils.PushNotificationUtils;
 
 public class LinphoneContext {
+    private static final String STAGE_LAUNCHER_ICON = "Launcher icon";
+    private static final String JAVA_LOGS_FILE_NAME = "linphone_java_logs.bin";
+    private static final long DEFERRED_STAGES_TIMEOUT = 5000; // ms
+    // Leave enough time for the INVITE to arrive after the push
+    private static final long PUSH_DEFERRED_STAGES_TIMEOUT = 15000; // ms
+
     private static LinphoneContext sInstance = null;
 
     private Context mContext;
 
-    private final LoggingServiceListener mJavaLoggingService =
-            new LoggingServiceListener() {
-                @Override
-                public void onLogMessageWritten(
-                        LoggingService logService, String domain, LogLevel lev, String message) {
-                    switch (lev) {
-                        case Debug:
-                            android.util.Log.d(domain, message);
-                            break;
-                        case Message:
-                            android.util.Log.i(domain, message);
-                            break;
-                        case Warning:
-                            android.util.Log.w(domain, message);
-                            break;
-                        case Error:
-                            android.util.Log.e(domain, message);
-                            break;
-                        case Fatal:
-                        default:
-                            android.util.Log.wtf(domain, message);
-                            break;
-                    }
-                }
-            };
+    private final AsyncJavaLogger mJavaLoggingService = new AsyncJavaLogger();
     private CoreListenerStub mListener;
     private NotificationsManager mNotificationManager;
     private LinphoneManager mLinphoneManager;
     private ContactsManager mContactsManager;
+    private MainThreadWatchdog mMainThreadWatchdog;
+    private CoreEventBus mCoreEventBus;
     private final ArrayList<CoreStartedListener> mCoreStartedListeners;
+    private final StartupOrchestrator mStartup;
+    private volatile Bitmap mLauncherIcon;
+    private final LatencyHistogram mPushToRingHistogram;
+    private boolean mIsPushStart;
 
     public static boolean isReady() {
         return sInstance != null;
@@ -99,15 +90,27 @@ public class LinphoneContext {
     public LinphoneContext(Context context) {
         mContext = context;
         mCoreStartedListeners = new ArrayList<>();
+        mStartup = new StartupOrchestrator();
+        mPushToRingHistogram = new LatencyHistogram("Push to incoming call");
 
-        LinphonePreferences.instance().setContext(context);
-        Factory.instance().setLogCollectionPath(context.getFilesDir().getAbsolutePath());
-        boolean isDebugEnabled = LinphonePreferences.instance().isDebugEnabled();
-        LinphoneUtils.configureLoggingService(isDebugEnabled, context.getString(R.string.app_name));
+        // Doesn't depend on anything, decode it while the Core is being created
+        mStartup.runBackgroundStage(
+                STAGE_LAUNCHER_ICON,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        mLauncherIcon = NotificationsManager.decodeLauncherIcon(mContext);
+                    }
+                });
 
-        // Dump some debugging information to the logs
-        dumpDeviceInformation();
-        dumpLinphoneInformation();
+        mStartup.runStage(
+                "Preferences & logging",
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        configurePreferencesAndLogging();
+                    }
+                });
 
         sInstance = this;
         Log.i("[Context] Ready");
@@ -125,6 +128,18 @@ public class LinphoneContext {
                         }
                     }
 
+                    @Override
+                    public void onRegistrationStateChanged(
+                            Core core,
+                            ProxyConfig proxyConfig,
+                            RegistrationState state,
+                            String message) {
+                        // When started by a push, wait for the call instead
+                        if (state == RegistrationState.Ok && !mIsPushStart) {
+                            mStartup.onFirstRegistration();
+                        }
+                    }
+
                     @Override
                     public void onConfiguringStatus(
                             Core core, ConfiguringState status, String message) {
@@ -147,6 +162,17 @@ public class LinphoneContext {
                             mNotificationManager.displayCallNotification(call);
                         }
 
+                        if (state == Call.State.IncomingReceived) {
+                            long pushDelay = PushNotificationUtils.consumePushReceivedDelay();
+                            if (pushDelay >= 0) {
+                                Log.i(
+                                        "[Context] [Push Notification] Incoming call received "
+                                                + pushDelay
+                                                + "ms after the push");
+                                mPushToRingHistogram.record(pushDelay * 1000);
+                            }
+                        }
+
                         if (state == Call.State.IncomingReceived
                                 || state == Call.State.IncomingEarlyMedia) {
                             // Starting SDK 24 (Android 7.0) we rely on the fullscreen intent of the
@@ -166,6 +192,7 @@ public class LinphoneContext {
                             onOutgoingStarted();
                         } else if (state == Call.State.Connected) {
                             onCallStarted();
+                            mStartup.onCallHandled();
                         } else if (state == Call.State.End
                                 || state == Call.State.Released
                                 || state == Call.State.Error) {
@@ -177,57 +204,156 @@ public class LinphoneContext {
                                     && call.getCallLog().getStatus() == Call.Status.Missed) {
                                 mNotificationManager.displayMissedCallNotification(call);
                             }
+                            mStartup.onCallHandled();
                         }
                     }
                 };
 
-        mLinphoneManager = new LinphoneManager(context);
-        mNotificationManager = new NotificationsManager(context);
+        mStartup.runStage(
+                "Linphone manager",
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        mLinphoneManager = new LinphoneManager(mContext);
+                        mCoreEventBus = new CoreEventBus();
+                    }
+                });
 
-        if (DeviceUtils.isAppUserRestricted(mContext)) {
-            // See https://firebase.google.com/docs/cloud-messaging/android/receive#restricted
-            Log.w(
-                    "[Context] Device has been restricted by user (Android 9+), push notifications won't work !");
-        }
+        mStartup.runStage(
+                "Notifications manager",
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        mNotificationManager = new NotificationsManager(mContext, mLauncherIcon);
+                    }
+                },
+                STAGE_LAUNCHER_ICON);
+
+        // Only useful for debugging purposes, don't delay the first frame for them
+        mStartup.runDeferredStage(
+                "Device information",
+                true,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        dumpDeviceInformation();
+                        dumpLinphoneInformation();
+                        dumpDeviceRestrictions();
+                    }
+                });
+    }
 
-        int bucket = DeviceUtils.getAppStandbyBucket(mContext);
-        if (bucket > 0) {
-            Log.w(
-                    "[Context] Device is in bucket "
-                            + Compatibility.getAppStandbyBucketNameFromValue(bucket));
+    private void configurePreferencesAndLogging() {
+        LinphonePreferences.instance().setContext(mContext);
+        String logCollectionPath = mContext.getFilesDir().getAbsolutePath();
+        Factory.instance().setLogCollectionPath(logCollectionPath);
+        if (LinphonePreferences.instance().isJavaLoggerBinaryFileEnabled()) {
+            mJavaLoggingService.setBinaryFilePath(logCollectionPath + "/" + JAVA_LOGS_FILE_NAME);
         }
-
-        if (!PushNotificationUtils.isAvailable(mContext)) {
-            Log.w("[Context] Push notifications won't work !");
+        boolean isDebugEnabled = LinphonePreferences.instance().isDebugEnabled();
+        LinphoneUtils.configureLoggingService(
+                isDebugEnabled, mContext.getString(R.string.app_name));
+
+        if (LinphonePreferences.instance().isMainThreadWatchdogEnabled()) {
+            mMainThreadWatchdog =
+                    new MainThreadWatchdog(
+                            logCollectionPath,
+                            LinphonePreferences.instance().getMainThreadStallThreshold());
+            mMainThreadWatchdog.start();
         }
     }
 
-    public void start(boolean isPush) {
+    public void start(final boolean isPush) {
         Log.i("[Context] Starting, push status is ", isPush);
-        mLinphoneManager.startLibLinphone(isPush, mListener);
+        mStartup.runStage(
+                "Core",
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        mLinphoneManager.startLibLinphone(isPush, mListener);
+                        Core core = LinphoneManager.getCore();
+                        if (core != null) {
+                            mCoreEventBus.start(core);
+                        }
+                        if (mMainThreadWatchdog != null) {
+                            mMainThreadWatchdog.addHistogram(mPushToRingHistogram);
+                            if (LinphoneManager.getCoreIterator() != null) {
+                                mMainThreadWatchdog.addHistogram(
+                                        LinphoneManager.getCoreIterator().getIterateHistogram());
+                            }
+                        }
+
+                        mNotificationManager.onCoreReady();
+                    }
+                });
 
-        mNotificationManager.onCoreReady();
+        mStartup.runStage(
+                "Contacts manager",
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        mContactsManager = new ContactsManager(mContext);
+                        if (isPush) {
+                            // Reading the native contacts isn't needed to ring
+                            mContactsManager.deferFetching();
+                        }
+                        if (!Version.sdkAboveOrEqual(Version.API26_O_80)
+                                || (mContactsManager.hasReadContactsAccess())) {
+                            mContext.getContentResolver()
+                                    .registerContentObserver(
+                                            ContactsContract.Contacts.CONTENT_URI,
+                                            true,
+                                            mContactsManager);
+                        }
+                        if (mContactsManager.hasReadContactsAccess()) {
+                            mContactsManager.enableContactsAccess();
+                        }
+                    }
+                });
 
-        mContactsManager = new ContactsManager(mContext);
-        if (!Version.sdkAboveOrEqual(Version.API26_O_80)
-                || (mContactsManager.hasReadContactsAccess())) {
-            mContext.getContentResolver()
-                    .registerContentObserver(
-                            ContactsContract.Contacts.CONTENT_URI, true, mContactsManager);
-        }
-        if (mContactsManager.hasReadContactsAccess()) {
-            mContactsManager.enableContactsAccess();
+        // Creating the sync account talks to the AccountManager and the contacts provider
+        mStartup.runDeferredStage(
+                "Contacts sync account",
+                true,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        mContactsManager.initializeContactManager();
+                    }
+                });
+        if (isPush) {
+            mStartup.runDeferredStage(
+                    "Contacts fetch",
+                    false,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            mContactsManager.resumeFetching();
+                        }
+                    });
         }
-        mContactsManager.initializeContactManager();
+
+        mIsPushStart = isPush;
+        mStartup.armDeferredStagesTimeout(
+                isPush ? PUSH_DEFERRED_STAGES_TIMEOUT : DEFERRED_STAGES_TIMEOUT);
     }
 
     public void destroy() {
         Log.i("[Context] Destroying");
+        mStartup.destroy();
+        if (mMainThreadWatchdog != null) {
+            mMainThreadWatchdog.dump();
+            mMainThreadWatchdog.stop();
+        }
+
         Core core = LinphoneManager.getCore();
         if (core != null) {
             core.removeListener(mListener);
-            core = null; // To allow the gc calls below to free the Core
         }
+        if (mCoreEventBus != null) {
+            mCoreEventBus.destroy(core);
+        }
+        core = null; // To allow the gc calls below to free the Core
 
         // Make sure our notification is gone.
         if (mNotificationManager != null) {
@@ -249,6 +375,7 @@ public class LinphoneContext {
         if (LinphonePreferences.instance().useJavaLogger()) {
             Factory.instance().getLoggingService().removeListener(mJavaLoggingService);
         }
+        mJavaLoggingService.stop();
         LinphonePreferences.instance().destroy();
     }
 
@@ -262,7 +389,7 @@ public class LinphoneContext {
 
     /* Managers accessors */
 
-    public LoggingServiceListener getJavaLoggingService() {
+    public AsyncJavaLogger getJavaLoggingService() {
         return mJavaLoggingService;
     }
 
@@ -278,6 +405,23 @@ public class LinphoneContext {
         return mContactsManager;
     }
 
+    public CoreEventBus getCoreEventBus() {
+        return mCoreEventBus;
+    }
+
+    public StartupOrchestrator getStartupOrchestrator() {
+        return mStartup;
+    }
+
+    /** Delays between a push and the incoming call it announced. */
+    public LatencyHistogram getPushToRingHistogram() {
+        return mPushToRingHistogram;
+    }
+
+    public MainThreadWatchdog getMainThreadWatchdog() {
+        return mMainThreadWatchdog;
+    }
+
     public void addCoreStartedListener(CoreStartedListener listener) {
         mCoreStartedListeners.add(listener);
     }
@@ -303,6 +447,25 @@ public class LinphoneContext {
         Log.i(sb.substring(0, sb.length() - 2));
     }
 
+    private void dumpDeviceRestrictions() {
+        if (DeviceUtils.isAppUserRestricted(mContext)) {
+            // See https://firebase.google.com/docs/cloud-messaging/android/receive#restricted
+            Log.w(
+                    "[Context] Device has been restricted by user (Android 9+), push notifications won't work !");
+        }
+
+        int bucket = DeviceUtils.getAppStandbyBucket(mContext);
+        if (bucket > 0) {
+            Log.w(
+                    "[Context] Device is in bucket "
+                            + Compatibility.getAppStandbyBucketNameFromValue(bucket));
+        }
+
+        if (!PushNotificationUtils.isAvailable(mContext)) {
+            Log.w("[Context] Push notifications won't work !");
+        }
+    }
+
     private void dumpLinphoneInformation() {
         Log.i("==== Linphone information dump ====");
         Log.i("VERSION NAME=" + org.linphone.BuildConfig.VERSION_NAME);
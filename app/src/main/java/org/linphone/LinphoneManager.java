@@ -39,8 +39,6 @@ import android.widget.CheckBox;
 import java.io.File;
 import java.sql.Timestamp;
 import java.util.Date;
-import java.util.Timer;
-import java.util.TimerTask;
 import org.linphone.assistant.PhoneAccountLinkingAssistantActivity;
 import org.linphone.call.AndroidAudioManager;
 import org.linphone.call.CallManager;
@@ -62,6 +60,7 @@ import org.linphone.core.Reason;
 import org.linphone.core.Tunnel;
 import org.linphone.core.TunnelConfig;
 import org.linphone.core.tools.Log;
+import org.linphone.service.LinphoneService;
 import org.linphone.settings.LinphonePreferences;
 import org.linphone.utils.LinphoneUtils;
 import org.linphone.utils.MediaScanner;
@@ -86,7 +85,7 @@ public class LinphoneManager implements SensorEventListener {
     private final SensorManager mSensorManager;
     private final Sensor mProximity;
     private final MediaScanner mMediaScanner;
-    private Timer mTimer;
+    private CoreIterator mCoreIterator;
 
     private final LinphonePreferences mPrefs;
     private Core mCore;
@@ -98,7 +97,6 @@ public class LinphoneManager implements SensorEventListener {
     private boolean mCallGsmON;
     private boolean mProximitySensingEnabled;
     private boolean mHasLastCallSasBeenRejected;
-    private Runnable mIterateRunnable;
 
     public LinphoneManager(Context c) {
         mExited = false;
@@ -178,7 +176,7 @@ public class LinphoneManager implements SensorEventListener {
                         } else if (state == State.IncomingReceived
                                 && (LinphonePreferences.instance().isAutoAnswerEnabled())
                                 && !getCallGsmON()) {
-                            LinphoneUtils.dispatchOnUIThreadAfter(
+                            mCoreIterator.postDelayed(
                                     new Runnable() {
                                         @Override
                                         public void run() {
@@ -281,6 +279,10 @@ public class LinphoneManager implements SensorEventListener {
         return getInstance().mCallManager;
     }
 
+    public static synchronized CoreIterator getCoreIterator() {
+        return getInstance().mCoreIterator;
+    }
+
     public static synchronized Core getCore() {
         if (!LinphoneContext.isReady()) return null;
 
@@ -341,7 +343,7 @@ public class LinphoneManager implements SensorEventListener {
         if (mMediaScanner != null) mMediaScanner.destroy();
         if (mAudioManager != null) mAudioManager.destroy();
 
-        if (mTimer != null) mTimer.cancel();
+        if (mCoreIterator != null) mCoreIterator.stop();
 
         if (mCore != null) {
             destroyCore();
@@ -368,25 +370,14 @@ public class LinphoneManager implements SensorEventListener {
 
             mCore.start();
 
-            mIterateRunnable =
-                    new Runnable() {
-                        @Override
-                        public void run() {
-                            if (mCore != null) {
-                                mCore.iterate();
-                            }
-                        }
-                    };
-            TimerTask lTask =
-                    new TimerTask() {
-                        @Override
-                        public void run() {
-                            LinphoneUtils.dispatchOnUIThread(mIterateRunnable);
-                        }
-                    };
-            /*use schedule instead of scheduleAtFixedRate to avoid iterate from being call in burst after cpu wake up*/
-            mTimer = new Timer("Linphone scheduler");
-            mTimer.schedule(lTask, 0, 20);
+            // The service may be auto started at boot or by a push without any UI visible
+            boolean foreground =
+                    !isPush
+                            && LinphoneService.isReady()
+                            && LinphoneService.instance().isInForeground();
+            mCoreIterator =
+                    new CoreIterator(mCore, mPrefs.isAdaptiveCoreIterateEnabled(), foreground);
+            mCoreIterator.start();
 
             configureCore();
         } catch (Exception e) {
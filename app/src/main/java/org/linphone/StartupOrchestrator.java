@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.linphone.core.tools.Log;
+
+/**
+ * Runs the startup of the app as named stages. A stage either runs on the calling (main) thread or
+ * on a background thread, in parallel of the following main thread stages, and only starts once
+ * the stages it depends on are done. Non critical stages can be deferred until the first frame has
+ * been drawn, the first account has registered or a call has been handled, whichever comes
+ * first.
+ *
+ * <p>The duration of each stage is written to the logs as a startup trace.
+ */
+public class StartupOrchestrator {
+    private final long mStartTime;
+    private final Handler mHandler;
+    private final ExecutorService mExecutor;
+    private final Map<String, Future<?>> mBackgroundStages;
+    private final LinkedHashMap<String, Stage> mDeferredStages;
+    private final ArrayList<String> mTrace;
+    private boolean mDeferredStagesReleased;
+    private boolean mDestroyed;
+
+    private final Runnable mTimeoutRunnable =
+            new Runnable() {
+                @Override
+                public void run() {
+                    releaseDeferredStages("timeout");
+                }
+            };
+
+    public StartupOrchestrator() {
+        mStartTime = SystemClock.uptimeMillis();
+        mHandler = new Handler(Looper.getMainLooper());
+        mBackgroundStages = new HashMap<>();
+        mDeferredStages = new LinkedHashMap<>();
+        mTrace = new ArrayList<>();
+        mExecutor =
+                Executors.newSingleThreadExecutor(
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                Thread thread = new Thread(r, "Linphone startup");
+                                thread.setPriority(Thread.MIN_PRIORITY);
+                                return thread;
+                            }
+                        });
+    }
+
+    /**
+     * Runs a stage right now, on the calling thread, once the background stages it depends on are
+     * done.
+     */
+    public void runStage(String name, Runnable task, String... dependencies) {
+        waitFor(dependencies);
+        trace(name, task);
+    }
+
+    /**
+     * Starts a stage on the background thread. Main thread stages that need its result must list
+     * it in their dependencies.
+     */
+    public synchronized void runBackgroundStage(final String name, final Runnable task) {
+        if (mDestroyed) return;
+        mBackgroundStages.put(
+                name,
+                mExecutor.submit(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                trace(name, task);
+                            }
+                        }));
+    }
+
+    /**
+     * Queues a stage until the first frame, registration or handled call. If that already happened
+     * the task is simply run, without being traced. Queuing a stage with the same name as a
+     * pending one replaces it.
+     */
+    public void runDeferredStage(String name, boolean background, Runnable task) {
+        synchronized (this) {
+            if (mDestroyed) return;
+            if (!mDeferredStagesReleased) {
+                mDeferredStages.remove(name);
+                mDeferredStages.put(name, new Stage(name, background, task));
+                return;
+            } else if (background) {
+                mExecutor.execute(task);
+                return;
+            }
+        }
+
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            task.run();
+        } else {
+            mHandler.post(task);
+        }
+    }
+
+    /** Arms the timeout after which deferred stages are run even if nothing triggered them. */
+    public void armDeferredStagesTimeout(long timeout) {
+        mHandler.removeCallbacks(mTimeoutRunnable);
+        mHandler.postDelayed(mTimeoutRunnable, timeout);
+    }
+
+    public void onFirstFrame() {
+        releaseDeferredStages("first frame");
+    }
+
+    public void onFirstRegistration() {
+        releaseDeferredStages("first registration");
+    }
+
+    /** A call has been answered or has ended. */
+    public void onCallHandled() {
+        releaseDeferredStages("call handled");
+    }
+
+    public synchronized boolean areDeferredStagesReleased() {
+        return mDeferredStagesReleased;
+    }
+
+    public synchronized void destroy() {
+        mDestroyed = true;
+        mHandler.removeCallbacks(mTimeoutRunnable);
+        mDeferredStages.clear();
+        mExecutor.shutdownNow();
+    }
+
+    /** Every stage already done, in completion order. */
+    public String getTrace() {
+        StringBuilder sb = new StringBuilder();
+        synchronized (mTrace) {
+            for (String line : mTrace) {
+                sb.append(line).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private synchronized void releaseDeferredStages(String reason) {
+        if (mDeferredStagesReleased || mDestroyed) return;
+        mDeferredStagesReleased = true;
+        mHandler.removeCallbacks(mTimeoutRunnable);
+
+        Log.i(
+                "[Startup] Running "
+                        + mDeferredStages.size()
+                        + " deferred stages after "
+                        + reason
+                        + " at +"
+                        + (SystemClock.uptimeMillis() - mStartTime)
+                        + "ms");
+        for (Stage stage : mDeferredStages.values()) {
+            stage.launch();
+        }
+        mDeferredStages.clear();
+    }
+
+    private void waitFor(String... dependencies) {
+        for (String dependency : dependencies) {
+            Future<?> future;
+            synchronized (this) {
+                future = mBackgroundStages.get(dependency);
+            }
+            if (future == null) continue;
+
+            long start = SystemClock.uptimeMillis();
+            try {
+                future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                Log.e("[Startup] Stage " + dependency + " failed: " + e);
+            }
+            long waited = SystemClock.uptimeMillis() - start;
+            if (waited > 0) {
+                Log.w("[Startup] Waited " + waited + "ms for stage " + dependency);
+            }
+        }
+    }
+
+    private void trace(String name, Runnable task) {
+        long start = SystemClock.uptimeMillis();
+        try {
+            task.run();
+        } finally {
+            long end = SystemClock.uptimeMillis();
+            String line =
+                    "Stage "
+                            + name
+                            + " took "
+                            + (end - start)
+                            + "ms on "
+                            + Thread.currentThread().getName()
+                            + " thread (from +"
+                            + (start - mStartTime)
+                            + "ms to +"
+                            + (end - mStartTime)
+                            + "ms)";
+            synchronized (mTrace) {
+                mTrace.add(line);
+            }
+            Log.i("[Startup] " + line);
+        }
+    }
+
+    private class Stage implements Runnable {
+        private final String mName;
+        private final boolean mBackground;
+        private final Runnable mTask;
+
+        Stage(String name, boolean background, Runnable task) {
+            mName = name;
+            mBackground = background;
+            mTask = task;
+        }
+
+        void launch() {
+            if (mBackground) {
+                mExecutor.execute(this);
+            } else {
+                mHandler.post(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (StartupOrchestrator.this) {
+                if (mDestroyed) return;
+            }
+            trace(mName, mTask);
+        }
+    }
+}
@@ -33,11 +33,13 @@ import android.widget.Button;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 import androidx.core.content.ContextCompat;
+import org.linphone.LinphoneContext;
 import org.linphone.LinphoneManager;
 import org.linphone.R;
 import org.linphone.core.Core;
 import org.linphone.core.CoreListenerStub;
 import org.linphone.settings.LinphonePreferences;
+import org.linphone.utils.MainThreadWatchdog;
 
 public class AboutActivity extends MainActivity {
     private CoreListenerStub mListener;
@@ -114,6 +116,12 @@ public class AboutActivity extends MainActivity {
                     public void onClick(View v) {
                         Core core = LinphoneManager.getCore();
                         if (core != null) {
+                            MainThreadWatchdog watchdog =
+                                    LinphoneContext.instance().getMainThreadWatchdog();
+                            if (watchdog != null) {
+                                // Make sure the latest report is in the uploaded logs
+                                watchdog.dump();
+                            }
                             core.uploadLogCollection();
                         }
                     }
@@ -24,6 +24,7 @@ import android.os.Bundle;
 import android.view.Surface;
 import org.linphone.LinphoneContext;
 import org.linphone.LinphoneManager;
+import org.linphone.StartupOrchestrator;
 import org.linphone.core.Core;
 import org.linphone.core.tools.Log;
 import org.linphone.service.LinphoneService;
@@ -43,6 +44,20 @@ public abstract class LinphoneGenericActivity extends ThemeableActivity {
         ensureServiceIsRunning();
 
         if (LinphoneContext.isReady()) {
+            final StartupOrchestrator startup = LinphoneContext.instance().getStartupOrchestrator();
+            if (!startup.areDeferredStagesReleased()) {
+                // Runnables posted on the decor view are run after its first layout & draw
+                getWindow()
+                        .getDecorView()
+                        .post(
+                                new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        startup.onFirstFrame();
+                                    }
+                                });
+            }
+
             int degrees = 270;
             int orientation = getWindowManager().getDefaultDisplay().getRotation();
             switch (orientation) {
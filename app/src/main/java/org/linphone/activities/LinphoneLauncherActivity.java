@@ -32,12 +32,11 @@ import org.linphone.contacts.ContactsActivity;
 import org.linphone.dialer.DialerActivity;
 import org.linphone.history.HistoryActivity;
 import org.linphone.service.LinphoneService;
-import org.linphone.service.ServiceWaitThread;
-import org.linphone.service.ServiceWaitThreadListener;
+import org.linphone.service.ServiceReadyListener;
 import org.linphone.settings.LinphonePreferences;
 
 /** Creates LinphoneService and wait until Core is ready to start main Activity */
-public class LinphoneLauncherActivity extends Activity implements ServiceWaitThreadListener {
+public class LinphoneLauncherActivity extends Activity implements ServiceReadyListener {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -59,11 +58,12 @@ public class LinphoneLauncherActivity extends Activity implements ServiceWaitThr
             onServiceReady();
         } else {
             try {
+                LinphoneService.addReadyListener(this);
                 startService(
                         new Intent()
                                 .setClass(LinphoneLauncherActivity.this, LinphoneService.class));
-                new ServiceWaitThread(this).start();
             } catch (IllegalStateException ise) {
+                LinphoneService.removeReadyListener(this);
                 Log.e("Linphone", "Exception raised while starting service: " + ise);
             }
         }
@@ -44,6 +44,7 @@ import android.widget.Toast;
 import androidx.core.app.ActivityCompat;
 import androidx.drawerlayout.widget.DrawerLayout;
 import java.util.ArrayList;
+import org.linphone.CoreEventBus;
 import org.linphone.LinphoneContext;
 import org.linphone.LinphoneManager;
 import org.linphone.R;
@@ -58,8 +59,6 @@ import org.linphone.contacts.LinphoneContact;
 import org.linphone.core.Address;
 import org.linphone.core.AuthInfo;
 import org.linphone.core.Call;
-import org.linphone.core.ChatMessage;
-import org.linphone.core.ChatRoom;
 import org.linphone.core.Core;
 import org.linphone.core.CoreListenerStub;
 import org.linphone.core.ProxyConfig;
@@ -99,6 +98,7 @@ public abstract class MainActivity extends LinphoneGenericActivity
     protected String[] mPermissionsToHave;
 
     private CoreListenerStub mListener;
+    private CoreEventBus.ChangesListener mChangesListener;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -185,6 +185,16 @@ public abstract class MainActivity extends LinphoneGenericActivity
             chat.setVisibility(View.GONE);
         }
 
+        mChangesListener =
+                new CoreEventBus.ChangesListener() {
+                    @Override
+                    public void onChanges(CoreEventBus.ChangeSet changes) {
+                        if (changes.hasChatRoomsChanges()) {
+                            displayMissedChats();
+                        }
+                    }
+                };
+
         mListener =
                 new CoreListenerStub() {
                     @Override
@@ -195,22 +205,6 @@ public abstract class MainActivity extends LinphoneGenericActivity
                         }
                     }
 
-                    @Override
-                    public void onMessageReceived(Core core, ChatRoom room, ChatMessage message) {
-                        displayMissedChats();
-                    }
-
-                    @Override
-                    public void onChatRoomRead(Core core, ChatRoom room) {
-                        displayMissedChats();
-                    }
-
-                    @Override
-                    public void onMessageReceivedUnableDecrypt(
-                            Core core, ChatRoom room, ChatMessage message) {
-                        displayMissedChats();
-                    }
-
                     @Override
                     public void onRegistrationStateChanged(
                             Core core,
@@ -307,6 +301,7 @@ public abstract class MainActivity extends LinphoneGenericActivity
             mSideMenuFragment.closeDrawer();
         }
 
+        LinphoneContext.instance().getCoreEventBus().addListener(mChangesListener);
         Core core = LinphoneManager.getCore();
         if (core != null) {
             core.addListener(mListener);
@@ -320,6 +315,7 @@ public abstract class MainActivity extends LinphoneGenericActivity
         mStatusBarFragment.setMenuListener(null);
         mSideMenuFragment.setQuitListener(null);
 
+        LinphoneContext.instance().getCoreEventBus().removeListener(mChangesListener);
         Core core = LinphoneManager.getCore();
         if (core != null) {
             core.removeListener(mListener);
@@ -344,6 +340,7 @@ public abstract class MainActivity extends LinphoneGenericActivity
         mStatusBarFragment = null;
 
         mListener = null;
+        mChangesListener = null;
 
         super.onDestroy();
     }
@@ -61,6 +61,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import org.linphone.CoreEventBus;
 import org.linphone.LinphoneContext;
 import org.linphone.LinphoneManager;
 import org.linphone.R;
@@ -70,7 +71,6 @@ import org.linphone.contacts.ContactsManager;
 import org.linphone.contacts.ContactsUpdatedListener;
 import org.linphone.contacts.LinphoneContact;
 import org.linphone.core.Address;
-import org.linphone.core.Call;
 import org.linphone.core.ChatMessage;
 import org.linphone.core.ChatRoom;
 import org.linphone.core.ChatRoomCapabilities;
@@ -78,7 +78,6 @@ import org.linphone.core.ChatRoomListener;
 import org.linphone.core.ChatRoomSecurityLevel;
 import org.linphone.core.Content;
 import org.linphone.core.Core;
-import org.linphone.core.CoreListenerStub;
 import org.linphone.core.EventLog;
 import org.linphone.core.Factory;
 import org.linphone.core.Participant;
@@ -123,7 +122,7 @@ public class ChatMessagesFragment extends Fragment
     private int mContextMenuMessagePosition;
     private LinearLayout mTopBar;
     private ImageView mChatRoomSecurityLevel;
-    private CoreListenerStub mCoreListener;
+    private CoreEventBus.ChangesListener mChangesListener;
 
     private InputContentInfoCompat mCurrentInputContentInfo;
 
@@ -305,12 +304,13 @@ public class ChatMessagesFragment extends Fragment
             onRestoreInstanceState(savedInstanceState);
         }
 
-        mCoreListener =
-                new CoreListenerStub() {
+        mChangesListener =
+                new CoreEventBus.ChangesListener() {
                     @Override
-                    public void onCallStateChanged(
-                            Core core, Call call, Call.State state, String message) {
-                        displayChatRoomHeader();
+                    public void onChanges(CoreEventBus.ChangeSet changes) {
+                        if (changes.hasCallsChanges()) {
+                            displayChatRoomHeader();
+                        }
                     }
                 };
 
@@ -321,10 +321,7 @@ public class ChatMessagesFragment extends Fragment
     public void onResume() {
         super.onResume();
 
-        Core core = LinphoneManager.getCore();
-        if (core != null) {
-            core.addListener(mCoreListener);
-        }
+        LinphoneContext.instance().getCoreEventBus().addListener(mChangesListener);
 
         ContactsManager.getInstance().addContactsListener(this);
 
@@ -354,10 +351,7 @@ public class ChatMessagesFragment extends Fragment
 
     @Override
     public void onPause() {
-        Core core = LinphoneManager.getCore();
-        if (core != null) {
-            core.removeListener(mCoreListener);
-        }
+        LinphoneContext.instance().getCoreEventBus().removeListener(mChangesListener);
 
         ContactsManager.getInstance().removeContactsListener(this);
         removeVirtualKeyboardVisiblityListener();
@@ -312,6 +312,12 @@ public class ChatRoomCreationFragment extends Fragment
         super.onPause();
     }
 
+    @Override
+    public void onDestroyView() {
+        mSearchAdapter.cancelSearch();
+        super.onDestroyView();
+    }
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -599,7 +605,7 @@ public class ChatRoomCreationFragment extends Fragment
     }
 
     private void resetAndResearch() {
-        ContactsManager.getInstance().getMagicSearch().resetSearchCache();
+        mSearchAdapter.resetSearchCache();
         mSearchAdapter.searchContacts(mSearchField.getQuery().toString());
     }
 
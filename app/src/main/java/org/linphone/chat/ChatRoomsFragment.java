@@ -32,17 +32,17 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import java.util.Arrays;
 import java.util.List;
+import org.linphone.CoreEventBus;
+import org.linphone.LinphoneContext;
 import org.linphone.LinphoneManager;
 import org.linphone.R;
 import org.linphone.activities.MainActivity;
 import org.linphone.call.views.LinphoneLinearLayoutManager;
 import org.linphone.contacts.ContactsManager;
 import org.linphone.contacts.ContactsUpdatedListener;
-import org.linphone.core.ChatMessage;
 import org.linphone.core.ChatRoom;
 import org.linphone.core.ChatRoomListenerStub;
 import org.linphone.core.Core;
-import org.linphone.core.CoreListenerStub;
 import org.linphone.core.EventLog;
 import org.linphone.core.ProxyConfig;
 import org.linphone.utils.LinphoneUtils;
@@ -57,7 +57,7 @@ public class ChatRoomsFragment extends Fragment
     private ImageView mNewGroupDiscussionButton;
     private ImageView mBackToCallButton;
     private ChatRoomsAdapter mChatRoomsAdapter;
-    private CoreListenerStub mListener;
+    private CoreEventBus.ChangesListener mListener;
     private RelativeLayout mWaitLayout;
     private int mChatRoomDeletionPendingCount;
     private ChatRoomListenerStub mChatRoomListener;
@@ -132,43 +132,17 @@ public class ChatRoomsFragment extends Fragment
                 });
 
         mListener =
-                new CoreListenerStub() {
+                new CoreEventBus.ChangesListener() {
                     @Override
-                    public void onMessageSent(Core core, ChatRoom room, ChatMessage message) {
-                        refreshChatRoom(room);
-                    }
-
-                    @Override
-                    public void onMessageReceived(Core core, ChatRoom room, ChatMessage message) {
-                        refreshChatRoom(room);
-                    }
-
-                    @Override
-                    public void onChatRoomSubjectChanged(Core core, ChatRoom room) {
-                        refreshChatRoom(room);
-                    }
-
-                    @Override
-                    public void onMessageReceivedUnableDecrypt(
-                            Core core, ChatRoom room, ChatMessage message) {
-                        refreshChatRoom(room);
-                    }
-
-                    @Override
-                    public void onChatRoomEphemeralMessageDeleted(Core lc, ChatRoom cr) {
-                        refreshChatRoom(cr);
-                    }
-
-                    @Override
-                    public void onChatRoomRead(Core core, ChatRoom room) {
-                        refreshChatRoom(room);
-                    }
+                    public void onChanges(CoreEventBus.ChangeSet changes) {
+                        if (!changes.hasChatRoomsChanges()) return;
 
-                    @Override
-                    public void onChatRoomStateChanged(
-                            Core core, ChatRoom room, ChatRoom.State state) {
-                        if (state == ChatRoom.State.Created) {
-                            refreshChatRoom(room);
+                        if (changes.getChatRooms().size() == 1) {
+                            refreshChatRoom(changes.getChatRooms().iterator().next());
+                        } else {
+                            refreshChatRoomsList();
+                        }
+                        if (!changes.getCreatedChatRooms().isEmpty()) {
                             scrollToTop();
                         }
                     }
@@ -227,10 +201,9 @@ public class ChatRoomsFragment extends Fragment
         ContactsManager.getInstance().addContactsListener(this);
 
         mBackToCallButton.setVisibility(View.INVISIBLE);
+        LinphoneContext.instance().getCoreEventBus().addListener(mListener);
         Core core = LinphoneManager.getCore();
         if (core != null) {
-            core.addListener(mListener);
-
             if (core.getCallsNb() > 0) {
                 mBackToCallButton.setVisibility(View.VISIBLE);
             }
@@ -245,10 +218,7 @@ public class ChatRoomsFragment extends Fragment
 
     @Override
     public void onPause() {
-        Core core = LinphoneManager.getCore();
-        if (core != null) {
-            core.removeListener(mListener);
-        }
+        LinphoneContext.instance().getCoreEventBus().removeListener(mListener);
         ContactsManager.getInstance().removeContactsListener(this);
         super.onPause();
     }
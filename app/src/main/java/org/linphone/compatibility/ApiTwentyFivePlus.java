@@ -26,10 +26,13 @@ import android.content.Context;
 import android.content.pm.ShortcutInfo;
 import android.content.pm.ShortcutManager;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import org.linphone.LinphoneManager;
 import org.linphone.R;
 import org.linphone.contacts.ContactsManager;
 import org.linphone.contacts.LinphoneContact;
+import org.linphone.contacts.views.AvatarLoader;
 import org.linphone.core.Address;
 import org.linphone.core.ChatRoom;
 import org.linphone.core.ChatRoomCapabilities;
@@ -39,8 +42,12 @@ import org.linphone.utils.LinphoneShortcutManager;
 
 @TargetApi(25)
 class ApiTwentyFivePlus {
+    // Incremented each time the shortcuts are rebuilt, only the newest ones are published
+    private static final AtomicLong sShortcutsGeneration = new AtomicLong();
 
     public static void removeChatShortcuts(Context context) {
+        // Shortcuts still being built must not be published afterwards
+        sShortcutsGeneration.incrementAndGet();
         ShortcutManager shortcutManager =
                 (ShortcutManager) context.getSystemService(Context.SHORTCUT_SERVICE);
         shortcutManager.removeAllDynamicShortcuts();
@@ -49,19 +56,20 @@ class ApiTwentyFivePlus {
     public static void createChatShortcuts(Context context) {
         if (!LinphonePreferences.instance().shortcutsCreationEnabled()) return;
 
-        LinphoneShortcutManager manager = new LinphoneShortcutManager(context);
-        ShortcutManager shortcutManager =
+        final Context appContext = context.getApplicationContext();
+        final ShortcutManager shortcutManager =
                 (ShortcutManager) context.getSystemService(Context.SHORTCUT_SERVICE);
-        ArrayList<ShortcutInfo> shortcuts = new ArrayList<>();
+        final boolean toContact = context.getResources().getBoolean(R.bool.shortcut_to_contact);
+        final boolean toChatRoom = context.getResources().getBoolean(R.bool.shortcut_to_chatroom);
 
+        // Rooms and contacts are resolved here, on the thread iterating the Core
         ChatRoom[] rooms = LinphoneManager.getCore().getChatRooms();
-
-        int i = 0;
         int maxShortcuts = min(rooms.length, shortcutManager.getMaxShortcutCountPerActivity());
-        ArrayList<LinphoneContact> contacts = new ArrayList<>();
+        final ArrayList<LinphoneContact> contacts = new ArrayList<>();
+        final ArrayList<String> peerAddresses = new ArrayList<>();
         for (ChatRoom room : rooms) {
             // Android can only have around 4-5 shortcuts at a time
-            if (i >= maxShortcuts) break;
+            if (contacts.size() >= maxShortcuts) break;
 
             Address participantAddress =
                     room.hasCapability(ChatRoomCapabilities.Basic.toInt())
@@ -74,37 +82,62 @@ class ApiTwentyFivePlus {
             LinphoneContact contact =
                     ContactsManager.getInstance().findContactFromAddress(participantAddress);
             if (contact != null && !contacts.contains(contact)) {
-                if (context.getResources().getBoolean(R.bool.shortcut_to_contact)) {
-                    ShortcutInfo shortcut = manager.createContactShortcutInfo(contact);
-                    if (shortcut != null) {
-                        Log.i(
-                                "[Shortcut] Creating launcher shortcut "
-                                        + shortcut.getShortLabel()
-                                        + " for contact "
-                                        + shortcut.getShortLabel());
-                        shortcuts.add(shortcut);
-                        contacts.add(contact);
-                        i += 1;
-                    }
-                } else if (context.getResources().getBoolean(R.bool.shortcut_to_chatroom)) {
-                    String peerAddress = room.getPeerAddress().asStringUriOnly();
-                    ShortcutInfo shortcut =
-                            manager.createChatRoomShortcutInfo(contact, peerAddress);
-                    if (shortcut != null) {
-                        Log.i(
-                                "[Shortcut] Creating launcher shortcut "
-                                        + shortcut.getShortLabel()
-                                        + " for room "
-                                        + shortcut.getId());
-                        shortcuts.add(shortcut);
-                        contacts.add(contact);
-                        i += 1;
+                contacts.add(contact);
+                peerAddresses.add(room.getPeerAddress().asStringUriOnly());
+            }
+        }
+
+        // Pictures are loaded on the avatars threads, then only the newest list is published
+        final long generation = sShortcutsGeneration.incrementAndGet();
+        AvatarLoader.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        ArrayList<ShortcutInfo> shortcuts =
+                                createShortcuts(
+                                        appContext, toContact, toChatRoom, contacts, peerAddresses);
+                        synchronized (sShortcutsGeneration) {
+                            if (generation != sShortcutsGeneration.get()) return;
+                            shortcutManager.setDynamicShortcuts(shortcuts);
+                        }
                     }
+                });
+    }
+
+    private static ArrayList<ShortcutInfo> createShortcuts(
+            Context context,
+            boolean toContact,
+            boolean toChatRoom,
+            List<LinphoneContact> contacts,
+            List<String> peerAddresses) {
+        LinphoneShortcutManager manager = new LinphoneShortcutManager(context);
+        ArrayList<ShortcutInfo> shortcuts = new ArrayList<>();
+        for (int i = 0; i < contacts.size(); i++) {
+            LinphoneContact contact = contacts.get(i);
+            if (toContact) {
+                ShortcutInfo shortcut = manager.createContactShortcutInfo(contact);
+                if (shortcut != null) {
+                    Log.i(
+                            "[Shortcut] Creating launcher shortcut "
+                                    + shortcut.getShortLabel()
+                                    + " for contact "
+                                    + shortcut.getShortLabel());
+                    shortcuts.add(shortcut);
+                }
+            } else if (toChatRoom) {
+                ShortcutInfo shortcut =
+                        manager.createChatRoomShortcutInfo(contact, peerAddresses.get(i));
+                if (shortcut != null) {
+                    Log.i(
+                            "[Shortcut] Creating launcher shortcut "
+                                    + shortcut.getShortLabel()
+                                    + " for room "
+                                    + shortcut.getId());
+                    shortcuts.add(shortcut);
                 }
             }
         }
-
-        shortcutManager.setDynamicShortcuts(shortcuts);
         manager.destroy();
+        return shortcuts;
     }
 }
@@ -37,6 +37,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import org.linphone.LinphoneContext;
 import org.linphone.R;
+import org.linphone.contacts.views.AvatarLoader;
 import org.linphone.core.tools.Log;
 
 class AndroidContact implements Serializable {
@@ -56,6 +57,10 @@ class AndroidContact implements Serializable {
         return mAndroidId;
     }
 
+    String getAndroidRawId() {
+        return mAndroidRawId;
+    }
+
     void setAndroidId(String id) {
         mAndroidId = id;
     }
@@ -227,55 +232,21 @@ class AndroidContact implements Serializable {
         }
     }
 
-    void updateNativeContactWithPresenceInfo(String value) {
+    /** @return the insertion of a number with presence in the Linphone raw contact */
+    ContentProviderOperation createPresenceInfoOperation(String value) {
         Log.d("[Contact] Adding presence information " + value);
-        addChangesToCommit(
-                ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-                        .withValue(ContactsContract.Data.RAW_CONTACT_ID, mAndroidRawId)
-                        .withValue(
-                                ContactsContract.Data.MIMETYPE,
-                                ContactsManager.getInstance()
-                                        .getString(R.string.linphone_address_mime_type))
-                        .withValue("data1", value) // phone number
-                        .withValue(
-                                "data2",
-                                ContactsManager.getInstance()
-                                        .getString(R.string.app_name)) // Summary
-                        .withValue("data3", value) // Detail
-                        .build());
-    }
-
-    boolean isLinphoneAddressMimeEntryAlreadyExisting(String value) {
-        boolean result = false;
-
-        ContentResolver resolver =
-                LinphoneContext.instance().getApplicationContext().getContentResolver();
-        String[] projection = {"data1", "data3"};
-        String selection =
-                ContactsContract.Data.RAW_CONTACT_ID
-                        + " = ? AND "
-                        + Data.MIMETYPE
-                        + " = ? AND data1 = ?";
-
-        Cursor c =
-                resolver.query(
-                        ContactsContract.Data.CONTENT_URI,
-                        projection,
-                        selection,
-                        new String[] {
-                            mAndroidRawId,
-                            ContactsManager.getInstance()
-                                    .getString(R.string.linphone_address_mime_type),
-                            value
-                        },
-                        null);
-        if (c != null) {
-            if (c.moveToFirst()) {
-                result = true;
-            }
-            c.close();
-        }
-        return result;
+        return ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+                .withValue(ContactsContract.Data.RAW_CONTACT_ID, mAndroidRawId)
+                .withValue(
+                        ContactsContract.Data.MIMETYPE,
+                        ContactsManager.getInstance()
+                                .getString(R.string.linphone_address_mime_type))
+                .withValue("data1", value) // phone number
+                .withValue(
+                        "data2",
+                        ContactsManager.getInstance().getString(R.string.app_name)) // Summary
+                .withValue("data3", value) // Detail
+                .build();
     }
 
     void addNumberOrAddress(String value, String oldValueToReplace, boolean isSIP) {
@@ -590,6 +561,7 @@ class AndroidContact implements Serializable {
                     os.write(photo);
                     os.close();
                     fd.close();
+                    AvatarLoader.invalidate(mAndroidId);
                 } else {
                     Log.e(
                             "[Contact] Failed to get raw contact photo URI for raw contact id [",
@@ -629,7 +601,8 @@ class AndroidContact implements Serializable {
         return result;
     }
 
-    void createRawLinphoneContactFromExistingAndroidContactIfNeeded() {
+    /** @return false if the contact needs a Linphone raw contact and it couldn't be created */
+    boolean createRawLinphoneContactFromExistingAndroidContactIfNeeded() {
         if (LinphoneContext.instance()
                 .getApplicationContext()
                 .getResources()
@@ -652,14 +625,20 @@ class AndroidContact implements Serializable {
                                     + " : "
                                     + linphoneRawId);
                     mAndroidRawId = linphoneRawId;
+                    isAndroidRawIdLinphone = true;
                 }
-                isAndroidRawIdLinphone = true;
             }
+            return mAndroidId == null || isAndroidRawIdLinphone;
         }
+        return true;
     }
 
     private void createRawLinphoneContactFromExistingAndroidContact() {
-        addChangesToCommit(
+        if (!ContactsManager.getInstance().hasReadContactsAccess()) return;
+
+        // Applied on their own, the changes waiting for save() don't need this raw contact
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(
                 ContentProviderOperation.newInsert(ContactsContract.RawContacts.CONTENT_URI)
                         .withValue(
                                 ContactsContract.RawContacts.ACCOUNT_TYPE,
@@ -672,7 +651,7 @@ class AndroidContact implements Serializable {
                                 ContactsContract.RawContacts.AGGREGATION_MODE_DEFAULT)
                         .build());
 
-        addChangesToCommit(
+        operations.add(
                 ContentProviderOperation.newUpdate(
                                 ContactsContract.AggregationExceptions.CONTENT_URI)
                         .withValue(
@@ -690,7 +669,18 @@ class AndroidContact implements Serializable {
                         + mAndroidId
                         + " linked with existing RAW contact "
                         + mAndroidRawId);
-        saveChangesCommited();
+        try {
+            ContentProviderResult[] results =
+                    LinphoneContext.instance()
+                            .getApplicationContext()
+                            .getContentResolver()
+                            .applyBatch(ContactsContract.AUTHORITY, operations);
+            mAndroidRawId = String.valueOf(ContentUris.parseId(results[0].uri));
+            isAndroidRawIdLinphone = true;
+            Log.i("[Contact] Linphone RAW ID " + mAndroidRawId + " created");
+        } catch (Exception e) {
+            Log.e("[Contact] Exception while creating linphone RAW contact: " + e);
+        }
     }
 
     private String findLinphoneRawContactId() {
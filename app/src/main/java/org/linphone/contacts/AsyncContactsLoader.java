@@ -23,20 +23,24 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.database.Cursor;
 import android.os.AsyncTask;
+import android.os.SystemClock;
 import android.provider.ContactsContract;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import org.linphone.LinphoneManager;
 import org.linphone.R;
-import org.linphone.compatibility.Compatibility;
 import org.linphone.core.Core;
 import org.linphone.core.Friend;
 import org.linphone.core.FriendList;
 import org.linphone.core.tools.Log;
 import org.linphone.settings.LinphonePreferences;
+import org.linphone.utils.LazyLog;
 import org.linphone.utils.LinphoneUtils;
 
 class AsyncContactsLoader extends AsyncTask<Void, Void, AsyncContactsLoader.AsyncContactsData> {
@@ -46,21 +50,44 @@ class AsyncContactsLoader extends AsyncTask<Void, Void, AsyncContactsLoader.Asyn
         ContactsContract.Contacts.DISPLAY_NAME_PRIMARY,
         ContactsContract.Data.MIMETYPE,
         ContactsContract.Contacts.STARRED,
+        ContactsContract.Data.PHOTO_ID,
+        ContactsContract.Data.PHOTO_FILE_ID,
         "data1", // Company, Phone or SIP Address
         "data2", // ContactsContract.CommonDataKinds.StructuredName.GIVEN_NAME
         "data3", // ContactsContract.CommonDataKinds.StructuredName.FAMILY_NAME
         "data4", // Normalized phone number
     };
 
-    private Context mContext;
+    // Rows updated during the previous sync may have the same timestamp as its start
+    private static final long SYNC_POINT_MARGIN = 1000; // ms
 
-    public AsyncContactsLoader(Context context) {
+    private Context mContext;
+    private final long mSince;
+    private long mSyncStart;
+    private final String mDialPrefix;
+    private final PhoneNumberIndex mPreviousPhoneNumberIndex;
+
+    /**
+     * @param since the timestamp of the last successful sync to only fetch the native contacts
+     *     updated or deleted since then, or -1 to scan all of them.
+     */
+    public AsyncContactsLoader(Context context, long since) {
         mContext = context;
+        mSince = since;
+        mDialPrefix = ContactsManager.getInstance().getDialPrefix();
+        mPreviousPhoneNumberIndex = ContactsManager.getInstance().getPhoneNumberIndex();
+    }
+
+    public boolean isIncremental() {
+        return mSince >= 0;
     }
 
     @Override
     protected void onPreExecute() {
-        Log.i("[Contacts Manager] Synchronization started");
+        Log.i(
+                "[Contacts Manager] "
+                        + (isIncremental() ? "Incremental" : "Full")
+                        + " synchronization started");
         if (LinphonePreferences.instance().isFriendlistsubscriptionEnabled()) {
             String rls = mContext.getString(R.string.rls_uri);
             for (FriendList list : LinphoneManager.getCore().getFriendsLists()) {
@@ -76,10 +103,16 @@ class AsyncContactsLoader extends AsyncTask<Void, Void, AsyncContactsLoader.Asyn
     @Override
     protected AsyncContactsData doInBackground(Void... params) {
         Log.i("[Contacts Manager] Background synchronization started");
+        long skippedLogs = LazyLog.getSkippedCount();
+        long start = SystemClock.uptimeMillis();
+        mSyncStart = System.currentTimeMillis();
 
-        HashMap<String, LinphoneContact> androidContactsCache = new HashMap<>();
-        AsyncContactsData data = new AsyncContactsData();
-        List<String> nativeIds = new ArrayList<>();
+        // The previous sync gives a good estimate of how many contacts there will be
+        int expectedContacts = ContactsManager.getInstance().getContacts().size();
+        HashMap<String, LinphoneContact> androidContactsCache =
+                new HashMap<>(capacityFor(expectedContacts));
+        AsyncContactsData data = new AsyncContactsData(expectedContacts);
+        int rows = 0;
 
         Core core = LinphoneManager.getCore();
         if (core != null) {
@@ -95,9 +128,11 @@ class AsyncContactsLoader extends AsyncTask<Void, Void, AsyncContactsLoader.Asyn
                     LinphoneContact contact = (LinphoneContact) friend.getUserData();
                     if (contact != null) {
                         if (contact.getAndroidId() != null) {
-                            contact.clearAddresses();
+                            // In incremental mode only the updated contacts are cleared
+                            if (!isIncremental()) {
+                                contact.clearAddresses();
+                            }
                             androidContactsCache.put(contact.getAndroidId(), contact);
-                            nativeIds.add(contact.getAndroidId());
                         } else {
                             data.contacts.add(contact);
                         }
@@ -121,10 +156,16 @@ class AsyncContactsLoader extends AsyncTask<Void, Void, AsyncContactsLoader.Asyn
 
         if (ContactsManager.getInstance().hasReadContactsAccess()) {
             String selection = null;
+            String[] selectionArgs = null;
             if (mContext.getResources().getBoolean(R.bool.fetch_contacts_from_default_directory)) {
                 Log.i("[Contacts Manager] Only fetching contacts in default directory");
                 selection = ContactsContract.Data.IN_DEFAULT_DIRECTORY + " == 1";
             }
+            if (isIncremental()) {
+                String updated = ContactsContract.Data.CONTACT_LAST_UPDATED_TIMESTAMP + " > ?";
+                selection = selection == null ? updated : selection + " AND " + updated;
+                selectionArgs = new String[] {String.valueOf(mSince - SYNC_POINT_MARGIN)};
+            }
 
             Cursor c =
                     mContext.getContentResolver()
@@ -132,36 +173,46 @@ class AsyncContactsLoader extends AsyncTask<Void, Void, AsyncContactsLoader.Asyn
                                     ContactsContract.Data.CONTENT_URI,
                                     PROJECTION,
                                     selection,
-                                    null,
+                                    selectionArgs,
                                     null);
             if (c != null) {
-                Log.i("[Contacts Manager] Found " + c.getCount() + " entries in cursor");
+                // Don't call getCount(), it would walk the whole result set before the first row
+                CursorColumns columns = new CursorColumns(c, mContext);
+                HashSet<String> seenIds = new HashSet<>(capacityFor(expectedContacts));
                 while (c.moveToNext()) {
                     if (isCancelled()) {
                         Log.w("[Contacts Manager] Task cancelled");
+                        c.close();
                         return data;
                     }
 
+                    rows += 1;
                     try {
-                        String id = c.getString(c.getColumnIndex(ContactsContract.Data.CONTACT_ID));
-                        boolean starred =
-                                c.getInt(c.getColumnIndex(ContactsContract.Contacts.STARRED)) == 1;
+                        String id = c.getString(columns.contactId);
+                        boolean starred = c.getInt(columns.starred) == 1;
+                        boolean firstRow = seenIds.add(id);
 
                         LinphoneContact contact = androidContactsCache.get(id);
                         if (contact == null) {
-                            Log.d(
-                                    "[Contacts Manager] Creating LinphoneContact with native ID "
-                                            + id
-                                            + ", favorite flag is "
-                                            + starred);
-                            nativeIds.add(id);
+                            LazyLog.d(
+                                    "[Contacts Manager] Creating LinphoneContact with native ID ",
+                                    id,
+                                    ", favorite flag is ",
+                                    starred);
                             contact = new LinphoneContact();
                             contact.setAndroidId(id);
                             contact.setIsFavourite(starred);
                             androidContactsCache.put(id, contact);
+                        } else if (isIncremental() && firstRow) {
+                            // First row of an updated contact, rebuild it from scratch
+                            contact.clearAddresses();
+                            contact.setIsFavourite(starred);
+                        }
+                        if (isIncremental() && firstRow) {
+                            data.updatedContacts.add(contact);
                         }
 
-                        contact.syncValuesFromAndroidCusor(c);
+                        contact.syncValuesFromAndroidCusor(c, columns);
                     } catch (IllegalStateException ise) {
                         Log.e(
                                 "[Contacts Manager] Couldn't get values from cursor, exception: ",
@@ -169,32 +220,28 @@ class AsyncContactsLoader extends AsyncTask<Void, Void, AsyncContactsLoader.Asyn
                     }
                 }
                 c.close();
-            }
-
-            FriendList[] friendLists = core.getFriendsLists();
-            for (FriendList list : friendLists) {
-                Friend[] friends = list.getFriends();
-                for (Friend friend : friends) {
-                    if (isCancelled()) {
-                        Log.w("[Contacts Manager] Task cancelled");
-                        return data;
-                    }
 
-                    LinphoneContact contact = (LinphoneContact) friend.getUserData();
-                    if (contact != null && contact.isAndroidContact()) {
-                        String id = contact.getAndroidId();
-                        if (id != null && !nativeIds.contains(id)) {
+                if (!isIncremental()) {
+                    // Every native contact has been scanned, those not seen are gone
+                    Iterator<String> it = androidContactsCache.keySet().iterator();
+                    while (it.hasNext()) {
+                        String id = it.next();
+                        if (!seenIds.contains(id)) {
                             Log.i("[Contacts Manager] Contact removed since last fetch: " + id);
-                            // Has been removed since last fetch
-                            androidContactsCache.remove(id);
+                            data.removedContacts.add(androidContactsCache.get(id));
+                            it.remove();
                         }
                     }
                 }
             }
-            nativeIds.clear();
-        }
 
+            if (isIncremental()) {
+                removeDeletedContacts(androidContactsCache, data);
+            }
+        }
         Collection<LinphoneContact> contacts = androidContactsCache.values();
+        boolean hideSipContactsWithoutPresence =
+                mContext.getResources().getBoolean(R.bool.hide_sip_contacts_without_presence);
         // New friends count will be 0 after the first contacts fetch
         Log.i(
                 "[Contacts Manager] Found "
@@ -235,10 +282,9 @@ class AsyncContactsLoader extends AsyncTask<Void, Void, AsyncContactsLoader.Asyn
                 }
             }*/
 
-            if (!mContext.getResources().getBoolean(R.bool.hide_sip_contacts_without_presence)) {
-                if (contact.hasAddress() && !data.sipContacts.contains(contact)) {
-                    data.sipContacts.add(contact);
-                }
+            // Each native contact is only once in the cache, no need to check for duplicates
+            if (!hideSipContactsWithoutPresence && contact.hasAddress()) {
+                data.sipContacts.add(contact);
             }
 
             data.contacts.add(contact);
@@ -246,13 +292,95 @@ class AsyncContactsLoader extends AsyncTask<Void, Void, AsyncContactsLoader.Asyn
 
         androidContactsCache.clear();
 
+        long indexStart = SystemClock.uptimeMillis();
+        data.phoneNumberIndex = buildPhoneNumberIndex(data);
+        data.byAndroidId = ContactsSnapshot.indexByAndroidId(data.contacts);
+        data.byAddress = ContactsSnapshot.indexByAddress(data.contacts);
+        Log.i(
+                "[Contacts Manager] Indexes of "
+                        + data.phoneNumberIndex.size()
+                        + " phone numbers and "
+                        + data.byAddress.size()
+                        + " SIP addresses built in "
+                        + (SystemClock.uptimeMillis() - indexStart)
+                        + "ms");
+
+        long sortStart = SystemClock.uptimeMillis();
         Collections.sort(data.contacts);
         Collections.sort(data.sipContacts);
+        Log.i(
+                "[Contacts Manager] Contacts sorted in "
+                        + (SystemClock.uptimeMillis() - sortStart)
+                        + "ms");
+
+        // Built from the sorted list, so results are in the same order
+        long searchIndexStart = SystemClock.uptimeMillis();
+        data.searchIndex = ContactsSearchIndex.build(data.contacts);
+        Log.i(
+                "[Contacts Manager] Search index built in "
+                        + (SystemClock.uptimeMillis() - searchIndexStart)
+                        + "ms");
 
-        Log.i("[Contacts Manager] Background synchronization finished");
+        Log.i(
+                "[Contacts Manager] Background synchronization finished in "
+                        + (SystemClock.uptimeMillis() - start)
+                        + "ms for "
+                        + rows
+                        + " rows and "
+                        + data.contacts.size()
+                        + " contacts, "
+                        + (LazyLog.getSkippedCount() - skippedLogs)
+                        + " debug log lines weren't built");
         return data;
     }
 
+    private PhoneNumberIndex buildPhoneNumberIndex(AsyncContactsData data) {
+        if (!isIncremental()
+                || mPreviousPhoneNumberIndex == null
+                || !mPreviousPhoneNumberIndex.isFor(mDialPrefix)) {
+            return PhoneNumberIndex.build(data.contacts, mDialPrefix);
+        }
+
+        // The published index can still be used while this copy is updated
+        PhoneNumberIndex index = mPreviousPhoneNumberIndex.copy();
+        for (LinphoneContact contact : data.removedContacts) {
+            index.remove(contact);
+        }
+        for (LinphoneContact contact : data.updatedContacts) {
+            index.remove(contact);
+            index.add(contact);
+        }
+        return index;
+    }
+
+    private static int capacityFor(int size) {
+        // Default load factor is 0.75
+        return Math.max(16, (int) (size / 0.75f) + 1);
+    }
+
+    private void removeDeletedContacts(
+            HashMap<String, LinphoneContact> androidContactsCache, AsyncContactsData data) {
+        Cursor c =
+                mContext.getContentResolver()
+                        .query(
+                                ContactsContract.DeletedContacts.CONTENT_URI,
+                                new String[] {ContactsContract.DeletedContacts.CONTACT_ID},
+                                ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP + " > ?",
+                                new String[] {String.valueOf(mSince - SYNC_POINT_MARGIN)},
+                                null);
+        if (c == null) return;
+
+        while (c.moveToNext()) {
+            String id = c.getString(0);
+            LinphoneContact contact = androidContactsCache.remove(id);
+            if (contact != null) {
+                Log.i("[Contacts Manager] Contact removed since last fetch: " + id);
+                data.removedContacts.add(contact);
+            }
+        }
+        c.close();
+    }
+
     @Override
     protected void onPostExecute(AsyncContactsData data) {
         Log.i(
@@ -262,7 +390,15 @@ class AsyncContactsLoader extends AsyncTask<Void, Void, AsyncContactsLoader.Asyn
                         + data.sipContacts.size()
                         + " are SIP");
 
-        for (LinphoneContact contact : data.contacts) {
+        for (LinphoneContact contact : data.removedContacts) {
+            contact.deleteFriend();
+            contact.setFriend(null);
+        }
+
+        // In incremental mode the friends of contacts that didn't change are up to date
+        List<LinphoneContact> contactsToUpdate =
+                isIncremental() ? data.updatedContacts : data.contacts;
+        for (LinphoneContact contact : contactsToUpdate) {
             contact.createOrUpdateFriendFromNativeContact();
         }
 
@@ -276,25 +412,76 @@ class AsyncContactsLoader extends AsyncTask<Void, Void, AsyncContactsLoader.Asyn
             }
         }
 
-        ContactsManager.getInstance().setContacts(data.contacts);
-        ContactsManager.getInstance().setSipContacts(data.sipContacts);
+        ContactsManager.getInstance()
+                .setContacts(
+                        data.contacts,
+                        data.sipContacts,
+                        data.byAndroidId,
+                        data.byAddress,
+                        data.phoneNumberIndex,
+                        data.searchIndex);
 
         for (ContactsUpdatedListener listener :
                 ContactsManager.getInstance().getContactsListeners()) {
             listener.onContactsUpdated();
         }
 
-        Compatibility.createChatShortcuts(mContext);
-        Log.i("[Contacts Manager] Synchronization finished");
+        ContactsManager.getInstance().onSynchronizationDone(isIncremental(), mSyncStart);
+        ContactsManager.getInstance().createChatShortcuts();
+        Log.i(
+                "[Contacts Manager] Synchronization finished, "
+                        + data.updatedContacts.size()
+                        + " contacts updated and "
+                        + data.removedContacts.size()
+                        + " removed");
+    }
+
+    /** Indices of the {@link #PROJECTION} columns, resolved once per cursor instead of per row. */
+    static class CursorColumns {
+        final int contactId;
+        final int displayName;
+        final int mime;
+        final int starred;
+        final int photoId;
+        final int photoFileId;
+        final int data1;
+        final int data2;
+        final int data3;
+        final int data4;
+        final String linphoneMimeType;
+
+        CursorColumns(Cursor c, Context context) {
+            contactId = c.getColumnIndex(ContactsContract.Data.CONTACT_ID);
+            displayName = c.getColumnIndex(ContactsContract.Data.DISPLAY_NAME_PRIMARY);
+            mime = c.getColumnIndex(ContactsContract.Data.MIMETYPE);
+            starred = c.getColumnIndex(ContactsContract.Contacts.STARRED);
+            photoId = c.getColumnIndex(ContactsContract.Data.PHOTO_ID);
+            photoFileId = c.getColumnIndex(ContactsContract.Data.PHOTO_FILE_ID);
+            data1 = c.getColumnIndex("data1");
+            data2 = c.getColumnIndex("data2");
+            data3 = c.getColumnIndex("data3");
+            data4 = c.getColumnIndex("data4");
+            linphoneMimeType = context.getString(R.string.linphone_address_mime_type);
+        }
     }
 
     class AsyncContactsData {
         final List<LinphoneContact> contacts;
         final List<LinphoneContact> sipContacts;
-
-        AsyncContactsData() {
-            contacts = new ArrayList<>();
+        // Only filled in incremental mode
+        final List<LinphoneContact> updatedContacts;
+        // Native contacts deleted since the last sync, their friends have to be removed
+        final List<LinphoneContact> removedContacts;
+        Map<String, LinphoneContact> byAndroidId;
+        Map<String, LinphoneContact> byAddress;
+        PhoneNumberIndex phoneNumberIndex;
+        ContactsSearchIndex searchIndex;
+
+        AsyncContactsData(int expectedContacts) {
+            contacts = new ArrayList<>(expectedContacts);
             sipContacts = new ArrayList<>();
+            updatedContacts = new ArrayList<>();
+            removedContacts = new ArrayList<>();
         }
     }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone.contacts;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import androidx.recyclerview.widget.DiffUtil;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.linphone.LinphoneContext;
+import org.linphone.core.tools.Log;
+import org.linphone.utils.LatencyHistogram;
+import org.linphone.utils.LazyLog;
+import org.linphone.utils.MainThreadWatchdog;
+
+/**
+ * Searches contacts on a background thread while the user types. Queries are debounced, and a new
+ * query cancels the previous one so only the result of the latest is delivered, with the diff
+ * from the list displayed when it was made. Must be used from the UI thread.
+ */
+class AsyncContactsSearch {
+    private static final long DEBOUNCE_DELAY = 100; // ms
+    // From the keystroke to the results delivery, debounce included
+    private static final LatencyHistogram sLatencyHistogram =
+            new LatencyHistogram("Contacts search");
+
+    interface Listener {
+        void onSearchDone(String query, List<LinphoneContact> contacts, DiffUtil.DiffResult diff);
+    }
+
+    private final Handler mHandler;
+    private final ExecutorService mExecutor;
+    private final Listener mListener;
+    private volatile long mGeneration;
+    private Runnable mDebouncedSearch;
+    private Future<?> mRunningSearch;
+
+    AsyncContactsSearch(Listener listener) {
+        mListener = listener;
+        mHandler = new Handler(Looper.getMainLooper());
+        mExecutor =
+                Executors.newSingleThreadExecutor(
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                return new Thread(r, "Contacts search");
+                            }
+                        });
+
+        MainThreadWatchdog watchdog = LinphoneContext.instance().getMainThreadWatchdog();
+        if (watchdog != null) {
+            watchdog.addHistogram(sLatencyHistogram);
+        }
+    }
+
+    /** @param displayed the list currently displayed, the diff will be computed against it */
+    void search(final String query, final boolean sipOnly, final List<LinphoneContact> displayed) {
+        cancel();
+        final long generation = mGeneration;
+        final long requestTime = SystemClock.uptimeMillis();
+        mDebouncedSearch =
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        mDebouncedSearch = null;
+                        mRunningSearch =
+                                mExecutor.submit(
+                                        new Runnable() {
+                                            @Override
+                                            public void run() {
+                                                doSearch(
+                                                        generation,
+                                                        requestTime,
+                                                        query,
+                                                        sipOnly,
+                                                        displayed);
+                                            }
+                                        });
+                    }
+                };
+        mHandler.postDelayed(mDebouncedSearch, DEBOUNCE_DELAY);
+    }
+
+    /** Forgets the pending search, if any. */
+    void cancel() {
+        mGeneration += 1;
+        if (mDebouncedSearch != null) {
+            mHandler.removeCallbacks(mDebouncedSearch);
+            mDebouncedSearch = null;
+        }
+        if (mRunningSearch != null) {
+            mRunningSearch.cancel(false);
+            mRunningSearch = null;
+        }
+    }
+
+    void destroy() {
+        cancel();
+        mExecutor.shutdownNow();
+        Log.i("[Contacts Search] " + sLatencyHistogram);
+    }
+
+    private void doSearch(
+            final long generation,
+            final long requestTime,
+            final String query,
+            boolean sipOnly,
+            List<LinphoneContact> displayed) {
+        long start = SystemClock.uptimeMillis();
+        final List<LinphoneContact> contacts =
+                sipOnly
+                        ? ContactsManager.getInstance().getSIPContacts(query)
+                        : ContactsManager.getInstance().getContacts(query);
+        if (generation != mGeneration) return;
+
+        final DiffUtil.DiffResult diff = ContactsDiffCallback.calculate(displayed, contacts);
+        if (generation != mGeneration) return;
+        LazyLog.d(
+                "[Contacts Search] ",
+                contacts.size(),
+                " results and their diff computed in ",
+                SystemClock.uptimeMillis() - start,
+                "ms");
+
+        mHandler.post(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) return;
+                        mRunningSearch = null;
+                        sLatencyHistogram.record((SystemClock.uptimeMillis() - requestTime) * 1000);
+                        mListener.onSearchDone(query, contacts, diff);
+                    }
+                });
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone.contacts;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import androidx.recyclerview.widget.DiffUtil;
+import java.util.ArrayList;
+import java.util.List;
+import org.linphone.CoreIterator;
+import org.linphone.LinphoneContext;
+import org.linphone.LinphoneManager;
+import org.linphone.R;
+import org.linphone.core.Address;
+import org.linphone.core.Core;
+import org.linphone.core.FriendCapability;
+import org.linphone.core.MagicSearch;
+import org.linphone.core.PresenceBasicStatus;
+import org.linphone.core.PresenceModel;
+import org.linphone.core.ProxyConfig;
+import org.linphone.core.SearchResult;
+import org.linphone.utils.LazyLog;
+
+/**
+ * Runs MagicSearch queries posted to the thread that iterates the Core, as liblinphone objects
+ * must only be used from it, instead of from the text listener. Queries superseded before they ran
+ * are skipped, and only the results of the latest one are delivered, with everything the list
+ * needs to bind them and the diff from the displayed ones.
+ *
+ * <p>MagicSearch refines its previous results when a query extends the previous one, so its cache
+ * is reset whenever the query that really runs doesn't.
+ */
+class AsyncMagicSearch {
+    interface Listener {
+        void onSearchDone(List<Entry> entries, DiffUtil.DiffResult diff);
+    }
+
+    private final Handler mUiHandler;
+    private final Listener mListener;
+    private final boolean mHideSipContactsWithoutPresence;
+    private volatile long mGeneration;
+    private volatile boolean mResetCacheRequested;
+
+    // Only used on the Core thread
+    private String mLastQuery;
+    private String mLastDomain;
+
+    AsyncMagicSearch(Listener listener) {
+        mListener = listener;
+        mUiHandler = new Handler(Looper.getMainLooper());
+        mHideSipContactsWithoutPresence =
+                LinphoneContext.instance()
+                        .getApplicationContext()
+                        .getResources()
+                        .getBoolean(R.bool.hide_sip_contacts_without_presence);
+    }
+
+    /** @param displayed the entries currently displayed, the diff will be computed against them */
+    void search(final String query, final boolean onlySipContacts, final List<Entry> displayed) {
+        mGeneration += 1;
+        final long generation = mGeneration;
+        Runnable task =
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) return; // Superseded
+                        doSearch(generation, query, onlySipContacts, displayed);
+                    }
+                };
+
+        CoreIterator iterator = LinphoneManager.getCoreIterator();
+        if (iterator != null) {
+            iterator.post(task);
+        } else {
+            mUiHandler.post(task);
+        }
+    }
+
+    /** The next search won't use the results of the previous one. */
+    void resetCache() {
+        mResetCacheRequested = true;
+    }
+
+    /** Pending searches are skipped and their results, if any, aren't delivered. */
+    void cancel() {
+        mGeneration += 1;
+    }
+
+    private void doSearch(
+            final long generation, String query, boolean onlySipContacts, List<Entry> displayed) {
+        Core core = LinphoneManager.getCore();
+        if (core == null) return;
+        long start = SystemClock.uptimeMillis();
+
+        ProxyConfig defaultProxyConfig = core.getDefaultProxyConfig();
+        String domain = "";
+        if (onlySipContacts && defaultProxyConfig != null) {
+            domain = defaultProxyConfig.getDomain();
+        }
+        Address identity =
+                defaultProxyConfig != null ? defaultProxyConfig.getIdentityAddress() : null;
+
+        MagicSearch magicSearch = ContactsManager.getInstance().getMagicSearch();
+        if (mResetCacheRequested
+                || mLastQuery == null
+                || !query.startsWith(mLastQuery)
+                || !domain.equals(mLastDomain)) {
+            mResetCacheRequested = false;
+            magicSearch.resetSearchCache();
+        }
+        mLastQuery = query;
+        mLastDomain = domain;
+
+        SearchResult[] searchResults = magicSearch.getContactListFromFilter(query, domain);
+        final List<Entry> entries = new ArrayList<>(searchResults.length);
+        for (SearchResult sr : searchResults) {
+            if (mHideSipContactsWithoutPresence && !hasPresence(sr)) continue;
+            entries.add(new Entry(sr, identity));
+        }
+
+        final DiffUtil.DiffResult diff =
+                DiffUtil.calculateDiff(new EntriesDiffCallback(displayed, entries), false);
+        LazyLog.d(
+                "[Magic Search] ",
+                entries.size(),
+                " results computed in ",
+                SystemClock.uptimeMillis() - start,
+                "ms");
+
+        mUiHandler.post(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) return;
+                        mListener.onSearchDone(entries, diff);
+                    }
+                });
+    }
+
+    private static boolean hasPresence(SearchResult sr) {
+        if (sr.getFriend() == null) return false;
+
+        PresenceModel pm = null;
+        if (sr.getAddress() != null) {
+            pm = sr.getFriend().getPresenceModelForUriOrTel(sr.getAddress().asStringUriOnly());
+        }
+        if (pm != null && pm.getBasicStatus().equals(PresenceBasicStatus.Open)) {
+            return true;
+        }
+        pm = sr.getFriend().getPresenceModelForUriOrTel(sr.getPhoneNumber());
+        return pm != null && pm.getBasicStatus().equals(PresenceBasicStatus.Open);
+    }
+
+    /** A search result and what is needed to display it, resolved once per search. */
+    static class Entry {
+        final SearchResult searchResult;
+        final LinphoneContact contact;
+        final String numberOrAddress;
+        final boolean presenceOpen;
+        final boolean isOwnAddress;
+        final boolean hasGroupChat;
+        final boolean hasLimeX3Dh;
+        final boolean contactHasLimeX3Dh;
+
+        Entry(SearchResult sr, Address identity) {
+            searchResult = sr;
+
+            if (sr.getFriend() != null && sr.getFriend().getUserData() != null) {
+                contact = (LinphoneContact) sr.getFriend().getUserData();
+            } else if (sr.getAddress() == null) {
+                contact =
+                        ContactsManager.getInstance()
+                                .findContactFromPhoneNumber(sr.getPhoneNumber());
+            } else {
+                contact = ContactsManager.getInstance().findContactFromAddress(sr.getAddress());
+            }
+
+            numberOrAddress =
+                    sr.getPhoneNumber() != null
+                            ? sr.getPhoneNumber()
+                            : sr.getAddress().asStringUriOnly();
+            presenceOpen =
+                    sr.getFriend() != null
+                            && contact != null
+                            && contact.getBasicStatusFromPresenceModelForUriOrTel(numberOrAddress)
+                                    == PresenceBasicStatus.Open;
+            // SDK won't accept ourselves in the list of participants
+            isOwnAddress =
+                    identity != null
+                            && sr.getAddress() != null
+                            && identity.weakEqual(sr.getAddress());
+            hasGroupChat = sr.hasCapability(FriendCapability.GroupChat);
+            hasLimeX3Dh = sr.hasCapability(FriendCapability.LimeX3Dh);
+            contactHasLimeX3Dh =
+                    contact != null && contact.hasFriendCapability(FriendCapability.LimeX3Dh);
+        }
+    }
+
+    private static class EntriesDiffCallback extends DiffUtil.Callback {
+        private final List<Entry> mOldEntries;
+        private final List<Entry> mNewEntries;
+
+        EntriesDiffCallback(List<Entry> oldEntries, List<Entry> newEntries) {
+            mOldEntries = oldEntries;
+            mNewEntries = newEntries;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldEntries.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewEntries.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldEntries
+                    .get(oldItemPosition)
+                    .numberOrAddress
+                    .equals(mNewEntries.get(newItemPosition).numberOrAddress);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            Entry oldEntry = mOldEntries.get(oldItemPosition);
+            Entry newEntry = mNewEntries.get(newItemPosition);
+            return oldEntry.contact == newEntry.contact
+                    && oldEntry.presenceOpen == newEntry.presenceOpen
+                    && oldEntry.isOwnAddress == newEntry.isOwnAddress
+                    && oldEntry.hasGroupChat == newEntry.hasGroupChat
+                    && oldEntry.hasLimeX3Dh == newEntry.hasLimeX3Dh
+                    && oldEntry.contactHasLimeX3Dh == newEntry.contactHasLimeX3Dh;
+        }
+    }
+}
@@ -19,17 +19,24 @@
  */
 package org.linphone.contacts;
 
+import static android.os.AsyncTask.THREAD_POOL_EXECUTOR;
+
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.SectionIndexer;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.Set;
 import org.linphone.R;
 import org.linphone.contacts.views.ContactAvatar;
 import org.linphone.settings.LinphonePreferences;
@@ -38,10 +45,10 @@ import org.linphone.utils.SelectableHelper;
 
 public class ContactsAdapter extends SelectableAdapter<ContactViewHolder>
         implements SectionIndexer {
-    private List<LinphoneContact> mContacts;
-    private String[] mSections;
-    private ArrayList<String> mSectionsList;
-    private Map<String, Integer> mMap = new LinkedHashMap<>();
+    private DataSet mData;
+    // Increased by each update, so an older asynchronous one can't overwrite it
+    private long mGeneration;
+    private final Handler mHandler;
     private final ContactViewHolder.ClickListener mClickListener;
     private final Context mContext;
     private boolean mIsSearchMode;
@@ -53,6 +60,8 @@ public class ContactsAdapter extends SelectableAdapter<ContactViewHolder>
             SelectableHelper helper) {
         super(helper);
         mContext = context;
+        mHandler = new Handler(Looper.getMainLooper());
+        setHasStableIds(true);
         updateDataSet(contactsList);
         mClickListener = clickListener;
     }
@@ -79,11 +88,7 @@ public class ContactsAdapter extends SelectableAdapter<ContactViewHolder>
             }
         }
         holder.separator.setVisibility(
-                mIsSearchMode
-                                || (getPositionForSection(getSectionForPosition(position))
-                                        != position)
-                        ? View.GONE
-                        : View.VISIBLE);
+                mIsSearchMode || !mData.isSectionStart(position) ? View.GONE : View.VISIBLE);
         holder.linphoneFriend.setVisibility(contact.isInFriendList() ? View.VISIBLE : View.GONE);
 
         ContactAvatar.displayAvatar(contact, holder.avatarLayout);
@@ -103,70 +108,203 @@ public class ContactsAdapter extends SelectableAdapter<ContactViewHolder>
 
     @Override
     public int getItemCount() {
-        return mContacts.size();
+        return mData.contacts.size();
     }
 
     public Object getItem(int position) {
         if (position >= getItemCount()) return null;
-        return mContacts.get(position);
+        return mData.contacts.get(position);
     }
 
     public void setIsSearchMode(boolean set) {
         mIsSearchMode = set;
     }
 
+    public boolean isSearchMode() {
+        return mIsSearchMode;
+    }
+
+    List<LinphoneContact> getContacts() {
+        return mData.contacts;
+    }
+
+    @Override
     public long getItemId(int position) {
-        return position;
+        return mData.contacts.get(position).getStableId();
     }
 
     public void updateDataSet(List<LinphoneContact> contactsList) {
-        mContacts = contactsList;
+        mGeneration += 1;
+        setData(DataSet.build(contactsList), null);
+    }
 
-        mMap = new LinkedHashMap<>();
-        String prevLetter = null;
-        for (int i = 0; i < mContacts.size(); i++) {
-            LinphoneContact contact = mContacts.get(i);
-            String fullName = contact.getFullName();
-            if (fullName == null || fullName.isEmpty()) {
-                continue;
-            }
-            String firstLetter = fullName.substring(0, 1).toUpperCase(Locale.getDefault());
-            if (!firstLetter.equals(prevLetter)) {
-                prevLetter = firstLetter;
-                mMap.put(firstLetter, i);
+    /** @param diff from the current contacts to the new ones */
+    void updateDataSet(List<LinphoneContact> contactsList, DiffUtil.DiffResult diff) {
+        mGeneration += 1;
+        setData(DataSet.build(contactsList), diff);
+    }
+
+    /**
+     * Sections and diff are computed in the background, then only the rows that changed are
+     * updated, which keeps the scroll position and doesn't rebind the other visible rows.
+     */
+    void updateDataSetAsync(final List<LinphoneContact> contactsList) {
+        mGeneration += 1;
+        final long generation = mGeneration;
+        final DataSet previous = mData;
+        THREAD_POOL_EXECUTOR.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        final DataSet data = DataSet.build(contactsList);
+                        final DiffUtil.DiffResult diff =
+                                ContactsDiffCallback.calculate(
+                                        previous.contacts,
+                                        previous.contentHashes,
+                                        data.contacts,
+                                        data.contentHashes);
+                        mHandler.post(
+                                new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        if (generation != mGeneration) return;
+                                        setData(data, diff);
+                                    }
+                                });
+                    }
+                });
+    }
+
+    /** @param diff null if every row may have changed */
+    private void setData(DataSet data, DiffUtil.DiffResult diff) {
+        // Selected items are positions, keep the contacts selected wherever they are now
+        List<Integer> selected = getSelectedItems();
+        HashSet<Long> selectedIds = new HashSet<>(selected.size());
+        for (int position : selected) {
+            selectedIds.add(getItemId(position));
+        }
+
+        mData = data;
+        if (!selectedIds.isEmpty()) {
+            List<Integer> positions = new ArrayList<>(selectedIds.size());
+            for (int i = 0; i < data.contacts.size(); i++) {
+                if (selectedIds.contains(data.contacts.get(i).getStableId())) {
+                    positions.add(i);
+                }
             }
+            setSelectedItems(positions);
         }
-        mSectionsList = new ArrayList<>(mMap.keySet());
-        mSections = new String[mSectionsList.size()];
-        mSectionsList.toArray(mSections);
 
-        notifyDataSetChanged();
+        if (diff != null) {
+            diff.dispatchUpdatesTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    /** Rebinds the displayed rows of these contacts. */
+    void notifyContactsChanged(Set<LinphoneContact> contacts) {
+        List<LinphoneContact> displayed = mData.contacts;
+        for (int i = 0; i < displayed.size(); i++) {
+            if (contacts.contains(displayed.get(i))) {
+                notifyItemChanged(i);
+            }
+        }
     }
 
     @Override
     public Object[] getSections() {
-        return mSections;
+        return mData.sections;
     }
 
     @Override
     public int getPositionForSection(int sectionIndex) {
-        if (sectionIndex >= mSections.length || sectionIndex < 0) {
+        if (sectionIndex >= mData.sections.length || sectionIndex < 0) {
             return 0;
         }
-        return mMap.get(mSections[sectionIndex]);
+        return mData.positionForSection[sectionIndex];
     }
 
     @Override
     public int getSectionForPosition(int position) {
-        if (position >= mContacts.size() || position < 0) {
+        if (position >= mData.contacts.size() || position < 0) {
             return 0;
         }
-        LinphoneContact contact = mContacts.get(position);
-        String fullName = contact.getFullName();
-        if (fullName == null || fullName.isEmpty()) {
-            return 0;
+        return mData.sectionForPosition[position];
+    }
+
+    /** Contacts list with its sections table, never modified once built. */
+    private static class DataSet {
+        final List<LinphoneContact> contacts;
+        final String[] sections;
+        final int[] positionForSection;
+        final int[] sectionForPosition;
+        final int[] contentHashes;
+
+        private DataSet(
+                List<LinphoneContact> contacts,
+                String[] sections,
+                int[] positionForSection,
+                int[] sectionForPosition) {
+            this.contacts = contacts;
+            this.sections = sections;
+            this.positionForSection = positionForSection;
+            this.sectionForPosition = sectionForPosition;
+            contentHashes = ContactsDiffCallback.contentHashes(contacts);
+            // The separator of a row depends on its neighbours, it is part of its content too
+            for (int i = 0; i < contentHashes.length; i++) {
+                contentHashes[i] = 31 * contentHashes[i] + (isSectionStart(i) ? 1 : 0);
+            }
+        }
+
+        /**
+         * Sections are the first letters of the names, a letter whose contacts aren't contiguous
+         * starts where its last run does. Contacts without name are in the first section.
+         */
+        static DataSet build(List<LinphoneContact> contacts) {
+            int size = contacts.size();
+            int[] sectionForPosition = new int[size];
+            ArrayList<String> sections = new ArrayList<>();
+            HashMap<String, Integer> sectionIndexes = new HashMap<>();
+            int[] positionForSection = new int[32];
+
+            String prevLetter = null;
+            int prevSection = 0;
+            for (int i = 0; i < size; i++) {
+                String fullName = contacts.get(i).getFullName();
+                if (fullName == null || fullName.isEmpty()) {
+                    continue;
+                }
+                String letter = fullName.substring(0, 1).toUpperCase(Locale.getDefault());
+                if (!letter.equals(prevLetter)) {
+                    Integer section = sectionIndexes.get(letter);
+                    if (section == null) {
+                        section = sections.size();
+                        sections.add(letter);
+                        sectionIndexes.put(letter, section);
+                        if (section == positionForSection.length) {
+                            positionForSection =
+                                    Arrays.copyOf(positionForSection, section * 2);
+                        }
+                    }
+                    positionForSection[section] = i;
+                    prevLetter = letter;
+                    prevSection = section;
+                }
+                sectionForPosition[i] = prevSection;
+            }
+
+            return new DataSet(
+                    contacts,
+                    sections.toArray(new String[0]),
+                    Arrays.copyOf(positionForSection, sections.size()),
+                    sectionForPosition);
+        }
+
+        boolean isSectionStart(int position) {
+            int section = sectionForPosition[position];
+            int start = section < sections.length ? positionForSection[section] : 0;
+            return start == position;
         }
-        String letter = fullName.substring(0, 1).toUpperCase(Locale.getDefault());
-        return mSectionsList.indexOf(letter);
     }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone.contacts;
+
+import androidx.recyclerview.widget.DiffUtil;
+import java.util.List;
+
+/**
+ * Differences between two contacts lists. Syncs update the existing LinphoneContact instances, so
+ * a contact is only the same item as itself, and its old content is only known through the hashes
+ * computed by {@link #contentHashes(List)} when the old list was displayed.
+ */
+class ContactsDiffCallback extends DiffUtil.Callback {
+    private final List<LinphoneContact> mOldContacts;
+    private final int[] mOldHashes;
+    private final List<LinphoneContact> mNewContacts;
+    private final int[] mNewHashes;
+
+    ContactsDiffCallback(
+            List<LinphoneContact> oldContacts,
+            int[] oldHashes,
+            List<LinphoneContact> newContacts,
+            int[] newHashes) {
+        mOldContacts = oldContacts;
+        mOldHashes = oldHashes;
+        mNewContacts = newContacts;
+        mNewHashes = newHashes;
+    }
+
+    /** Sorted lists don't need moves to be detected, which is much cheaper. */
+    static DiffUtil.DiffResult calculate(
+            List<LinphoneContact> oldContacts, List<LinphoneContact> newContacts) {
+        return calculate(oldContacts, null, newContacts, null);
+    }
+
+    /** @param oldHashes and newHashes may be null, contents are then considered unchanged */
+    static DiffUtil.DiffResult calculate(
+            List<LinphoneContact> oldContacts,
+            int[] oldHashes,
+            List<LinphoneContact> newContacts,
+            int[] newHashes) {
+        return DiffUtil.calculateDiff(
+                new ContactsDiffCallback(oldContacts, oldHashes, newContacts, newHashes), false);
+    }
+
+    /** @return for each contact, a hash of what a contacts list row displays */
+    static int[] contentHashes(List<LinphoneContact> contacts) {
+        int[] hashes = new int[contacts.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            LinphoneContact contact = contacts.get(i);
+            int hash = hashOf(contact.getFullName());
+            hash = 31 * hash + hashOf(contact.getOrganization());
+            hash = 31 * hash + hashOf(contact.getThumbnailUri());
+            hash = 31 * hash + hashOf(contact.getPhotoUri());
+            hash = 31 * hash + contact.getPresenceVersion();
+            hashes[i] = hash;
+        }
+        return hashes;
+    }
+
+    private static int hashOf(Object o) {
+        return o != null ? o.hashCode() : 0;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldContacts.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewContacts.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return mOldContacts.get(oldItemPosition) == mNewContacts.get(newItemPosition);
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        if (mOldHashes == null || mNewHashes == null) {
+            // Same instance, so the old content isn't known anymore
+            return true;
+        }
+        return mOldHashes[oldItemPosition] == mNewHashes[newItemPosition];
+    }
+}
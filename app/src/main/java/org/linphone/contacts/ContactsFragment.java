@@ -31,12 +31,14 @@ import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.SearchView;
 import android.widget.TextView;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.DividerItemDecoration;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import org.linphone.LinphoneManager;
 import org.linphone.R;
 import org.linphone.call.views.LinphoneLinearLayoutManager;
@@ -44,9 +46,10 @@ import org.linphone.utils.SelectableHelper;
 
 public class ContactsFragment extends Fragment
         implements OnItemClickListener,
-                ContactsUpdatedListener,
+                ContactsPresenceListener,
                 ContactViewHolder.ClickListener,
-                SelectableHelper.DeleteListener {
+                SelectableHelper.DeleteListener,
+                AsyncContactsSearch.Listener {
     private RecyclerView mContactsList;
     private TextView mNoSipContact, mNoContact;
     private ImageView mAllContacts;
@@ -61,6 +64,7 @@ public class ContactsFragment extends Fragment
     private SelectableHelper mSelectionHelper;
     private ContactsAdapter mContactAdapter;
     private SwipeRefreshLayout mContactsRefresher;
+    private AsyncContactsSearch mSearch;
 
     @Override
     public View onCreateView(
@@ -81,12 +85,13 @@ public class ContactsFragment extends Fragment
         mContactsFetchInProgress = view.findViewById(R.id.contactsFetchInProgress);
         ImageView newContact = view.findViewById(R.id.newContact);
         mContactsRefresher = view.findViewById(R.id.contactsListRefresher);
+        mSearch = new AsyncContactsSearch(this);
 
         mContactsRefresher.setOnRefreshListener(
                 new SwipeRefreshLayout.OnRefreshListener() {
                     @Override
                     public void onRefresh() {
-                        ContactsManager.getInstance().fetchContactsAsync();
+                        ContactsManager.getInstance().fetchContactsAsync(true);
                     }
                 });
 
@@ -180,6 +185,12 @@ public class ContactsFragment extends Fragment
         return view;
     }
 
+    @Override
+    public void onDestroyView() {
+        mSearch.destroy();
+        super.onDestroyView();
+    }
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -236,14 +247,19 @@ public class ContactsFragment extends Fragment
 
     @Override
     public void onContactsUpdated() {
-        if (mContactAdapter != null) {
-            mContactAdapter.updateDataSet(
+        String query = mSearchView.getQuery().toString();
+        if (mContactAdapter != null && mContactAdapter.isSearchMode() && !query.isEmpty()) {
+            // Keep displaying the search results, with the new contacts
+            mSearch.search(query, mOnlyDisplayLinphoneContacts, mContactAdapter.getContacts());
+        } else if (mContactAdapter != null) {
+            List<LinphoneContact> contacts =
                     mOnlyDisplayLinphoneContacts
                             ? ContactsManager.getInstance().getSIPContacts()
-                            : ContactsManager.getInstance().getContacts());
-            mContactAdapter.notifyDataSetChanged();
+                            : ContactsManager.getInstance().getContacts();
+            // Only rebinds the rows that changed, a sync doesn't make the whole list flash
+            mContactAdapter.updateDataSetAsync(contacts);
 
-            if (mContactAdapter.getItemCount() > 0) {
+            if (!contacts.isEmpty()) {
                 mNoContact.setVisibility(View.GONE);
                 mNoSipContact.setVisibility(View.GONE);
             }
@@ -252,6 +268,13 @@ public class ContactsFragment extends Fragment
         mContactsRefresher.setRefreshing(false);
     }
 
+    @Override
+    public void onContactsPresenceChanged(Set<LinphoneContact> contacts) {
+        if (mContactAdapter != null) {
+            mContactAdapter.notifyContactsChanged(contacts);
+        }
+    }
+
     @Override
     public void onDeleteSelection(Object[] objectsToDelete) {
         ArrayList<String> ids = new ArrayList<>();
@@ -269,35 +292,45 @@ public class ContactsFragment extends Fragment
     }
 
     private void searchContacts(String search) {
-        boolean isEditionEnabled = false;
         if (search == null || search.isEmpty()) {
+            mSearch.cancel();
             changeContactsAdapter();
             return;
         }
         changeContactsToggle();
 
-        List<LinphoneContact> listContact;
+        List<LinphoneContact> displayed =
+                mContactAdapter != null
+                        ? mContactAdapter.getContacts()
+                        : new ArrayList<LinphoneContact>();
+        mSearch.search(search, mOnlyDisplayLinphoneContacts, displayed);
+    }
 
-        if (mOnlyDisplayLinphoneContacts) {
-            listContact = ContactsManager.getInstance().getSIPContacts(search);
+    @Override
+    public void onSearchDone(
+            String query, List<LinphoneContact> contacts, DiffUtil.DiffResult diff) {
+        if (mContactAdapter == null) {
+            mContactAdapter = new ContactsAdapter(mContext, contacts, this, mSelectionHelper);
+            mContactAdapter.setIsSearchMode(true);
+            mSelectionHelper.setAdapter(mContactAdapter);
+            mContactsList.setAdapter(mContactAdapter);
+        } else if (!mContactAdapter.isSearchMode()) {
+            // Section separators are hidden in search mode, every row has to be bound again
+            mContactAdapter.setIsSearchMode(true);
+            mContactAdapter.updateDataSet(contacts);
         } else {
-            listContact = ContactsManager.getInstance().getContacts(search);
-        }
-        if (mContactAdapter != null && mContactAdapter.isEditionEnabled()) {
-            isEditionEnabled = true;
+            mContactAdapter.updateDataSet(contacts, diff);
         }
-
-        mContactAdapter = new ContactsAdapter(mContext, listContact, this, mSelectionHelper);
-        mContactAdapter.setIsSearchMode(true);
-
-        mSelectionHelper.setAdapter(mContactAdapter);
-        if (isEditionEnabled) {
-            mSelectionHelper.enterEditionMode();
-        }
-        mContactsList.setAdapter(mContactAdapter);
     }
 
     private void changeContactsAdapter() {
+        String query = mSearchView.getQuery().toString();
+        if (!query.isEmpty()) {
+            // The results will be filtered according to the toggle
+            searchContacts(query);
+            return;
+        }
+
         changeContactsToggle();
         List<LinphoneContact> listContact;
 
@@ -305,19 +338,10 @@ public class ContactsFragment extends Fragment
         mNoContact.setVisibility(View.GONE);
         mContactsList.setVisibility(View.VISIBLE);
         boolean isEditionEnabled = false;
-        String query = mSearchView.getQuery().toString();
-        if (query.equals("")) {
-            if (mOnlyDisplayLinphoneContacts) {
-                listContact = ContactsManager.getInstance().getSIPContacts();
-            } else {
-                listContact = ContactsManager.getInstance().getContacts();
-            }
+        if (mOnlyDisplayLinphoneContacts) {
+            listContact = ContactsManager.getInstance().getSIPContacts();
         } else {
-            if (mOnlyDisplayLinphoneContacts) {
-                listContact = ContactsManager.getInstance().getSIPContacts(query);
-            } else {
-                listContact = ContactsManager.getInstance().getContacts(query);
-            }
+            listContact = ContactsManager.getInstance().getContacts();
         }
 
         if (mContactAdapter != null && mContactAdapter.isEditionEnabled()) {
@@ -36,17 +36,22 @@ import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.provider.ContactsContract;
+import android.util.LruCache;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import org.linphone.LinphoneContext;
 import org.linphone.LinphoneManager;
 import org.linphone.R;
 import org.linphone.compatibility.Compatibility;
 import org.linphone.core.Address;
 import org.linphone.core.Core;
+import org.linphone.core.CoreListenerStub;
 import org.linphone.core.Friend;
 import org.linphone.core.FriendList;
 import org.linphone.core.FriendListListener;
@@ -54,18 +59,80 @@ import org.linphone.core.MagicSearch;
 import org.linphone.core.PresenceBasicStatus;
 import org.linphone.core.PresenceModel;
 import org.linphone.core.ProxyConfig;
+import org.linphone.core.RegistrationState;
 import org.linphone.core.tools.Log;
 import org.linphone.settings.LinphonePreferences;
+import org.linphone.utils.LazyLog;
 
 public class ContactsManager extends ContentObserver
         implements FriendListListener, LinphoneContext.CoreStartedListener {
-    private List<LinphoneContact> mContacts, mSipContacts;
+    // An incremental sync could miss changes, for example from sync adapters that don't update
+    // the timestamps, so a full one is still done from time to time
+    private static final long FULL_SYNC_INTERVAL = 6 * 60 * 60 * 1000; // ms
+    // Contacts changes are only synchronized once no other one was notified for that long...
+    private static final long CHANGES_QUIET_PERIOD = 1000; // ms
+    // ...but never later than that after the first one
+    private static final long CHANGES_MAX_LATENCY = 5000; // ms
+    // Presence received during that window after a first change is delivered with it
+    private static final long PRESENCE_BATCH_WINDOW = 250; // ms
+    private static final int PHONE_NUMBER_MISSES_CACHE_SIZE = 256;
+
+    // Readers never lock, writers serialize on mSnapshotLock and publish a new snapshot
+    private volatile ContactsSnapshot mSnapshot = ContactsSnapshot.EMPTY;
+    private final Object mSnapshotLock = new Object();
     private final ArrayList<ContactsUpdatedListener> mContactsUpdatedListeners;
     private MagicSearch mMagicSearch;
     private boolean mContactsFetchedOnce = false;
     private Context mContext;
     private AsyncContactsLoader mLoadContactTask;
     private boolean mInitialized = false;
+    private boolean mFetchDeferred = false;
+    private boolean mFetchPending = false;
+    private boolean mFullSyncRequested = true;
+    // Timestamp of the contacts provider at the start of the last successful sync
+    private long mLastSyncTimestamp = -1;
+    private long mLastFullSyncTime = 0;
+
+    private final Handler mHandler;
+    private boolean mSyncInProgress = false;
+    private boolean mTrailingSyncNeeded = false;
+    private long mFirstPendingChangeTime = 0;
+    private int mPendingChangesCount = 0;
+    private long mChangesCount = 0;
+    private long mMergedChangesCount = 0;
+
+    // Dial prefix of the default proxy config, only used from the UI thread
+    private String mDialPrefix;
+    private CoreListenerStub mCoreListener;
+    private volatile ContactsSearchIndex.Result mLastSearchResult;
+
+    // Phone numbers matching no contact, only valid for a snapshot version and dial prefix
+    private final LruCache<String, Boolean> mPhoneNumberMisses =
+            new LruCache<>(PHONE_NUMBER_MISSES_CACHE_SIZE);
+    private long mPhoneNumberMissesVersion = -1;
+    private String mPhoneNumberMissesPrefix;
+
+    // Contacts whose presence changed since the last batch, filled from the Core thread
+    private final Object mPresenceLock = new Object();
+    private Set<LinphoneContact> mPendingPresenceChanges = newContactsSet();
+    private int mPendingPresenceNotifies = 0;
+    private final NativePresenceWriter mNativePresenceWriter;
+
+    private final Runnable mChangesSyncRunnable =
+            new Runnable() {
+                @Override
+                public void run() {
+                    syncPendingChanges();
+                }
+            };
+
+    private final Runnable mPresenceBatchRunnable =
+            new Runnable() {
+                @Override
+                public void run() {
+                    applyPresenceChanges();
+                }
+            };
 
     public static ContactsManager getInstance() {
         return LinphoneContext.instance().getContactsManager();
@@ -73,10 +140,10 @@ public class ContactsManager extends ContentObserver
 
     public ContactsManager(Context context) {
         super(new Handler(Looper.getMainLooper()));
+        mHandler = new Handler(Looper.getMainLooper());
         mContext = context;
+        mNativePresenceWriter = new NativePresenceWriter(context);
         mContactsUpdatedListeners = new ArrayList<>();
-        mContacts = new ArrayList<>();
-        mSipContacts = new ArrayList<>();
 
         if (LinphoneManager.getCore() != null) {
             mMagicSearch = LinphoneManager.getCore().createMagicSearch();
@@ -105,60 +172,192 @@ public class ContactsManager extends ContentObserver
 
     @Override
     public void onChange(boolean selfChange, Uri uri) {
-        Log.i("[Contacts Manager] Content observer detected a changing in at least one contact");
+        // Bulk imports or account syncs notify many changes in a row, wait for them to settle
+        long now = SystemClock.uptimeMillis();
+        mChangesCount += 1;
+        if (mPendingChangesCount == 0) {
+            Log.i(
+                    "[Contacts Manager] Content observer detected a changing in at least one contact");
+            mFirstPendingChangeTime = now;
+        }
+        mPendingChangesCount += 1;
+
+        long syncTime =
+                Math.min(now + CHANGES_QUIET_PERIOD, mFirstPendingChangeTime + CHANGES_MAX_LATENCY);
+        mHandler.removeCallbacks(mChangesSyncRunnable);
+        mHandler.postAtTime(mChangesSyncRunnable, syncTime);
+    }
+
+    private void syncPendingChanges() {
+        if (mPendingChangesCount == 0) return;
+
+        if (mSyncInProgress) {
+            // Don't abort the running sync, do another one right after it
+            mTrailingSyncNeeded = true;
+            return;
+        }
+
+        mMergedChangesCount += mPendingChangesCount - 1;
+        Log.i(
+                "[Contacts Manager] Synchronizing "
+                        + mPendingChangesCount
+                        + " contacts changes notifications, "
+                        + mMergedChangesCount
+                        + " of "
+                        + mChangesCount
+                        + " merged so far");
+        mPendingChangesCount = 0;
         fetchContactsAsync();
     }
 
+    /** Number of content observer notifications received. */
+    public long getChangesCount() {
+        return mChangesCount;
+    }
+
+    /** Number of content observer notifications that didn't need a sync of their own. */
+    public long getMergedChangesCount() {
+        return mMergedChangesCount;
+    }
+
     @Override
     public void onCoreStarted() {
+        Core core = LinphoneManager.getCore();
+        if (core != null && mCoreListener == null) {
+            mCoreListener =
+                    new CoreListenerStub() {
+                        @Override
+                        public void onRegistrationStateChanged(
+                                Core core,
+                                ProxyConfig proxyConfig,
+                                RegistrationState state,
+                                String message) {
+                            // Proxy config changes, including the dial prefix, end up here
+                            checkDialPrefix();
+                        }
+                    };
+            core.addListener(mCoreListener);
+        }
+        mDialPrefix = getDefaultDialPrefix();
+
         // Core has been started, fetch contacts again in case there are some
         // in the configuration file or remote provisioning
-        fetchContactsAsync();
+        fetchContactsAsync(true);
     }
 
-    public synchronized List<LinphoneContact> getContacts() {
-        return mContacts;
+    /** The current contacts and indexes, the returned snapshot won't change. */
+    public ContactsSnapshot getSnapshot() {
+        return mSnapshot;
     }
 
-    synchronized void setContacts(List<LinphoneContact> c) {
-        mContacts = c;
+    /** @return an unmodifiable list */
+    public List<LinphoneContact> getContacts() {
+        return mSnapshot.getContacts();
     }
 
-    public synchronized List<LinphoneContact> getSIPContacts() {
-        return mSipContacts;
+    /** @return an unmodifiable list */
+    public List<LinphoneContact> getSIPContacts() {
+        return mSnapshot.getSipContacts();
     }
 
-    synchronized void setSipContacts(List<LinphoneContact> c) {
-        mSipContacts = c;
+    /** Publishes the result of a sync, indexes were built by the contacts loader. */
+    void setContacts(
+            List<LinphoneContact> contacts,
+            List<LinphoneContact> sipContacts,
+            Map<String, LinphoneContact> byAndroidId,
+            Map<String, LinphoneContact> byAddress,
+            PhoneNumberIndex phoneNumberIndex,
+            ContactsSearchIndex searchIndex) {
+        boolean dialPrefixChanged = !phoneNumberIndex.isFor(mDialPrefix);
+        synchronized (mSnapshotLock) {
+            mSnapshot =
+                    mSnapshot.withContacts(
+                            contacts,
+                            sipContacts,
+                            byAndroidId,
+                            byAddress,
+                            dialPrefixChanged ? null : phoneNumberIndex,
+                            searchIndex);
+        }
+        if (dialPrefixChanged) {
+            // The dial prefix changed while the index was built
+            rebuildPhoneNumberIndex();
+        }
     }
 
     public void destroy() {
         mContext.getContentResolver().unregisterContentObserver(this);
+        mHandler.removeCallbacks(mChangesSyncRunnable);
+        mHandler.removeCallbacks(mPresenceBatchRunnable);
+        mNativePresenceWriter.destroy();
         LinphoneContext.instance().removeCoreStartedListener(this);
 
         if (mLoadContactTask != null) {
             mLoadContactTask.cancel(true);
         }
+        ContactsSnapshot snapshot;
+        synchronized (mSnapshotLock) {
+            snapshot = mSnapshot;
+            mSnapshot = snapshot.cleared();
+        }
         // LinphoneContact has a Friend field and Friend can have a LinphoneContact has userData
         // Friend also keeps a ref on the Core, so we have to clean them
-        for (LinphoneContact c : mContacts) {
+        for (LinphoneContact c : snapshot.getContacts()) {
             c.setFriend(null);
         }
-        mContacts.clear();
-        for (LinphoneContact c : mSipContacts) {
+        for (LinphoneContact c : snapshot.getSipContacts()) {
             c.setFriend(null);
         }
-        mSipContacts.clear();
 
         Core core = LinphoneManager.getCore();
         if (core != null) {
             for (FriendList list : core.getFriendsLists()) {
                 list.removeListener(this);
             }
+            if (mCoreListener != null) {
+                core.removeListener(mCoreListener);
+            }
+        }
+        mCoreListener = null;
+    }
+
+    /** Until {@link #resumeFetching()} is called, fetches are only remembered. */
+    public synchronized void deferFetching() {
+        mFetchDeferred = true;
+    }
+
+    public void resumeFetching() {
+        boolean fetchPending;
+        synchronized (this) {
+            mFetchDeferred = false;
+            fetchPending = mFetchPending;
+            mFetchPending = false;
+        }
+        if (fetchPending) {
+            Log.i("[Contacts Manager] Fetching contacts that were deferred");
+            fetchContactsAsync();
         }
     }
 
     public void fetchContactsAsync() {
+        fetchContactsAsync(false);
+    }
+
+    /**
+     * Only the native contacts updated or deleted since the last sync are fetched, unless a full
+     * scan is forced, has never been done or hasn't been done for a while.
+     */
+    public void fetchContactsAsync(boolean forceFullSync) {
+        synchronized (this) {
+            if (forceFullSync) {
+                mFullSyncRequested = true;
+            }
+            if (mFetchDeferred) {
+                mFetchPending = true;
+                return;
+            }
+        }
+
         if (mLoadContactTask != null) {
             mLoadContactTask.cancel(true);
         }
@@ -168,11 +367,98 @@ public class ContactsManager extends ContentObserver
                     "[Contacts Manager] Can't fetch native contacts without READ_CONTACTS permission");
         }
 
-        mLoadContactTask = new AsyncContactsLoader(mContext);
+        mLoadContactTask = new AsyncContactsLoader(mContext, getIncrementalSyncPoint());
         mContactsFetchedOnce = true;
+        mSyncInProgress = true;
         mLoadContactTask.executeOnExecutor(THREAD_POOL_EXECUTOR);
     }
 
+    private synchronized long getIncrementalSyncPoint() {
+        if (mFullSyncRequested
+                || mLastSyncTimestamp < 0
+                || !hasReadContactsAccess()
+                || SystemClock.elapsedRealtime() - mLastFullSyncTime > FULL_SYNC_INTERVAL) {
+            return -1;
+        }
+        return mLastSyncTimestamp;
+    }
+
+    void onSynchronizationDone(boolean incremental, long syncStartTimestamp) {
+        synchronized (this) {
+            mLastSyncTimestamp = syncStartTimestamp;
+            if (!incremental) {
+                mFullSyncRequested = false;
+                mLastFullSyncTime = SystemClock.elapsedRealtime();
+            }
+        }
+
+        mSyncInProgress = false;
+        if (mTrailingSyncNeeded) {
+            mTrailingSyncNeeded = false;
+            Log.i("[Contacts Manager] Contacts changed during the sync, starting another one");
+            syncPendingChanges();
+        }
+    }
+
+    String getDialPrefix() {
+        return mDialPrefix;
+    }
+
+    PhoneNumberIndex getPhoneNumberIndex() {
+        return mSnapshot.getPhoneNumberIndex();
+    }
+
+    /** Rebuilds the phone numbers index if the dial prefix of the default account changed. */
+    public void checkDialPrefix() {
+        String prefix = getDefaultDialPrefix();
+        if (prefix == null ? mDialPrefix == null : prefix.equals(mDialPrefix)) return;
+
+        Log.i(
+                "[Contacts Manager] Dial prefix changed from "
+                        + mDialPrefix
+                        + " to "
+                        + prefix
+                        + ", rebuilding phone numbers index");
+        mDialPrefix = prefix;
+        synchronized (mSnapshotLock) {
+            mSnapshot = mSnapshot.withPhoneNumberIndex(null);
+        }
+        rebuildPhoneNumberIndex();
+    }
+
+    private void rebuildPhoneNumberIndex() {
+        final List<LinphoneContact> contacts = getContacts();
+        final String prefix = mDialPrefix;
+        THREAD_POOL_EXECUTOR.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        final PhoneNumberIndex index = PhoneNumberIndex.build(contacts, prefix);
+                        mHandler.post(
+                                new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        if (!index.isFor(mDialPrefix)) return;
+                                        synchronized (mSnapshotLock) {
+                                            // Contacts may have been synced in the meantime
+                                            if (mSnapshot.getPhoneNumberIndex() == null) {
+                                                mSnapshot = mSnapshot.withPhoneNumberIndex(index);
+                                            }
+                                        }
+                                    }
+                                });
+                    }
+                });
+    }
+
+    private String getDefaultDialPrefix() {
+        Core core = LinphoneManager.getCore();
+        if (core == null) return null;
+        ProxyConfig lpc = core.getDefaultProxyConfig();
+        if (lpc == null) return null;
+        return lpc.getDialPrefix();
+    }
+
     public MagicSearch getMagicSearch() {
         return mMagicSearch;
     }
@@ -181,42 +467,34 @@ public class ContactsManager extends ContentObserver
         return mContactsFetchedOnce;
     }
 
+    /** Contacts whose name, organization or phone numbers contain the search, accents ignored. */
     public List<LinphoneContact> getContacts(String search) {
-        search = search.toLowerCase(Locale.getDefault());
-        List<LinphoneContact> searchContactsBegin = new ArrayList<>();
-        List<LinphoneContact> searchContactsContain = new ArrayList<>();
-        for (LinphoneContact contact : getContacts()) {
-            if (contact.getFullName() != null) {
-                if (contact.getFullName().toLowerCase(Locale.getDefault()).startsWith(search)) {
-                    searchContactsBegin.add(contact);
-                } else if (contact.getFullName()
-                        .toLowerCase(Locale.getDefault())
-                        .contains(search)) {
-                    searchContactsContain.add(contact);
-                }
-            }
-        }
-        searchContactsBegin.addAll(searchContactsContain);
-        return searchContactsBegin;
+        return search(search, false);
     }
 
     public List<LinphoneContact> getSIPContacts(String search) {
-        search = search.toLowerCase(Locale.getDefault());
-        List<LinphoneContact> searchContactsBegin = new ArrayList<>();
-        List<LinphoneContact> searchContactsContain = new ArrayList<>();
-        for (LinphoneContact contact : getSIPContacts()) {
-            if (contact.getFullName() != null) {
-                if (contact.getFullName().toLowerCase(Locale.getDefault()).startsWith(search)) {
-                    searchContactsBegin.add(contact);
-                } else if (contact.getFullName()
-                        .toLowerCase(Locale.getDefault())
-                        .contains(search)) {
-                    searchContactsContain.add(contact);
-                }
-            }
-        }
-        searchContactsBegin.addAll(searchContactsContain);
-        return searchContactsBegin;
+        return search(search, true);
+    }
+
+    private List<LinphoneContact> search(String search, boolean sipOnly) {
+        long start = SystemClock.uptimeMillis();
+        ContactsSnapshot snapshot = mSnapshot;
+        ContactsSearchIndex index = snapshot.getSearchIndex();
+
+        // While the user types, each query only needs to look at the results of the previous one
+        ContactsSearchIndex.Result previous = mLastSearchResult;
+        ContactsSearchIndex.Result result =
+                index.search(search, previous != null && previous.isFor(index) ? previous : null);
+        mLastSearchResult = result;
+
+        List<LinphoneContact> contacts = result.getContacts(sipOnly ? snapshot : null);
+        LazyLog.d(
+                "[Contacts Manager] Search found ",
+                contacts.size(),
+                " contacts in ",
+                SystemClock.uptimeMillis() - start,
+                "ms");
+        return contacts;
     }
 
     public void enableContactsAccess() {
@@ -269,7 +547,7 @@ public class ContactsManager extends ContentObserver
                         .equals(mContext.getString(R.string.default_domain));
     }
 
-    public void initializeContactManager() {
+    public synchronized void initializeContactManager() {
         if (!mInitialized) {
             if (mContext.getResources().getBoolean(R.bool.use_linphone_tag)) {
                 if (hasReadContactsAccess()
@@ -364,29 +642,32 @@ public class ContactsManager extends ContentObserver
         return id;
     }
 
-    public synchronized LinphoneContact findContactFromAndroidId(String androidId) {
+    public LinphoneContact findContactFromAndroidId(String androidId) {
         if (androidId == null) {
             return null;
         }
-
-        for (LinphoneContact c : getContacts()) {
-            if (c.getAndroidId() != null && c.getAndroidId().equals(androidId)) {
-                return c;
-            }
-        }
-        return null;
+        return mSnapshot.findFromAndroidId(androidId);
     }
 
-    public synchronized LinphoneContact findContactFromAddress(Address address) {
+    public LinphoneContact findContactFromAddress(Address address) {
         if (address == null) return null;
-        Core core = LinphoneManager.getCore();
 
-        Friend lf = core.findFriend(address);
+        String username = address.getUsername();
+        ContactsSnapshot snapshot = mSnapshot;
+        if (snapshot.isIndexed()) {
+            LinphoneContact contact = snapshot.findFromAddress(username, address.getDomain());
+            if (contact != null) {
+                return contact;
+            }
+        }
+        // Only liblinphone matches the addresses stored without domain, completed with the one of
+        // the proxy config, and those differing by case
+        Core core = LinphoneManager.getCore();
+        Friend lf = core != null ? core.findFriend(address) : null;
         if (lf != null) {
             return (LinphoneContact) lf.getUserData();
         }
 
-        String username = address.getUsername();
         if (username == null) {
             Log.w("[Contacts Manager] Address ", address.asString(), " doesn't have a username!");
             return null;
@@ -399,9 +680,56 @@ public class ContactsManager extends ContentObserver
         return null;
     }
 
-    public synchronized LinphoneContact findContactFromPhoneNumber(String phoneNumber) {
+    public LinphoneContact findContactFromPhoneNumber(String phoneNumber) {
         if (phoneNumber == null) return null;
 
+        ContactsSnapshot snapshot = mSnapshot;
+        String prefix = mDialPrefix;
+        if (isKnownPhoneNumberMiss(phoneNumber, snapshot.getVersion(), prefix)) return null;
+
+        PhoneNumberIndex index = snapshot.getPhoneNumberIndex();
+        if (index != null) {
+            LinphoneContact contact = index.find(phoneNumber);
+            if (contact != null) {
+                return contact;
+            }
+        }
+        // The dial plans of liblinphone know more than the index, like the trunk prefixes kept
+        // after the country code or the international prefixes other than 00
+        LinphoneContact contact = findFriendFromPhoneNumber(phoneNumber);
+        if (contact == null && index != null) {
+            addPhoneNumberMiss(phoneNumber, snapshot.getVersion(), prefix);
+        }
+        return contact;
+    }
+
+    private boolean isKnownPhoneNumberMiss(String phoneNumber, long version, String prefix) {
+        synchronized (mPhoneNumberMisses) {
+            if (!isPhoneNumberMissesFor(version, prefix)) return false;
+            return mPhoneNumberMisses.get(phoneNumber) != null;
+        }
+    }
+
+    private void addPhoneNumberMiss(String phoneNumber, long version, String prefix) {
+        synchronized (mPhoneNumberMisses) {
+            if (!isPhoneNumberMissesFor(version, prefix)) {
+                // Contacts or dial prefix changed, previous misses may match now
+                mPhoneNumberMisses.evictAll();
+                mPhoneNumberMissesVersion = version;
+                mPhoneNumberMissesPrefix = prefix;
+            }
+            mPhoneNumberMisses.put(phoneNumber, Boolean.TRUE);
+        }
+    }
+
+    private boolean isPhoneNumberMissesFor(long version, String prefix) {
+        return version == mPhoneNumberMissesVersion
+                && (prefix == null
+                        ? mPhoneNumberMissesPrefix == null
+                        : prefix.equals(mPhoneNumberMissesPrefix));
+    }
+
+    private LinphoneContact findFriendFromPhoneNumber(String phoneNumber) {
         if (!android.util.Patterns.PHONE.matcher(phoneNumber).matches()) {
             Log.w(
                     "[Contacts Manager] Expected phone number but doesn't look like it: "
@@ -478,11 +806,13 @@ public class ContactsManager extends ContentObserver
         return null;
     }
 
-    private synchronized boolean refreshSipContact(Friend lf) {
-        if (lf == null) return false;
+    /** @return the contact of the friend, if any */
+    private LinphoneContact refreshSipContact(Friend lf) {
+        if (lf == null) return null;
         LinphoneContact contact = (LinphoneContact) lf.getUserData();
 
         if (contact != null) {
+            contact.onPresenceChanged();
             if (LinphoneContext.instance()
                     .getApplicationContext()
                     .getResources()
@@ -507,21 +837,14 @@ public class ContactsManager extends ContentObserver
                                 && pm.getBasicStatus() != null
                                 && pm.getBasicStatus().equals(PresenceBasicStatus.Open)) {
                             // Add presence to native contact
-                            AsyncContactPresence asyncContactPresence =
-                                    new AsyncContactPresence(contact, value);
-                            asyncContactPresence.execute();
+                            mNativePresenceWriter.add(contact, value);
                         }
                     }
                 }
             }
-
-            if (!mSipContacts.contains(contact)) {
-                mSipContacts.add(contact);
-                return true;
-            }
         }
 
-        return false;
+        return contact;
     }
 
     public void delete(String id) {
@@ -572,24 +895,93 @@ public class ContactsManager extends ContentObserver
 
     @Override
     public void onPresenceReceived(FriendList list, Friend[] friends) {
-        boolean updated = false;
-
+        List<LinphoneContact> contacts = new ArrayList<>(friends.length);
         for (Friend lf : friends) {
-            boolean newContact = refreshSipContact(lf);
-
-            if (newContact) {
-                updated = true;
+            LinphoneContact contact = refreshSipContact(lf);
+            if (contact != null) {
+                contacts.add(contact);
             }
         }
 
-        if (updated) {
-            Collections.sort(mSipContacts);
+        boolean schedule;
+        synchronized (mPresenceLock) {
+            mPendingPresenceChanges.addAll(contacts);
+            schedule = mPendingPresenceNotifies == 0;
+            mPendingPresenceNotifies += 1;
+        }
+
+        // Subscriptions to a big friend list are answered by bursts of NOTIFY, they would refresh
+        // the UI hundreds of times in a few seconds
+        if (schedule) {
+            mHandler.postDelayed(mPresenceBatchRunnable, PRESENCE_BATCH_WINDOW);
+        }
+    }
+
+    /** Delivers the presence changes received during the last window at once. */
+    private void applyPresenceChanges() {
+        Set<LinphoneContact> changed;
+        int notifies;
+        synchronized (mPresenceLock) {
+            changed = mPendingPresenceChanges;
+            notifies = mPendingPresenceNotifies;
+            mPendingPresenceChanges = newContactsSet();
+            mPendingPresenceNotifies = 0;
+        }
+
+        boolean sipContactsChanged = false;
+        synchronized (mSnapshotLock) {
+            List<LinphoneContact> sipContacts = null;
+            for (LinphoneContact contact : changed) {
+                if (!mSnapshot.isSipContact(contact)) {
+                    if (sipContacts == null) {
+                        sipContacts = new ArrayList<>(mSnapshot.getSipContacts());
+                    }
+                    sipContacts.add(contact);
+                }
+            }
+            if (sipContacts != null) {
+                Collections.sort(sipContacts);
+                mSnapshot = mSnapshot.withSipContacts(sipContacts);
+                sipContactsChanged = true;
+            }
         }
+        LazyLog.d(
+                "[Contacts Manager] Presence of ",
+                changed.size(),
+                " contacts changed by ",
+                notifies,
+                " notifications");
 
         for (ContactsUpdatedListener listener : mContactsUpdatedListeners) {
-            listener.onContactsUpdated();
+            if (!sipContactsChanged && listener instanceof ContactsPresenceListener) {
+                ((ContactsPresenceListener) listener).onContactsPresenceChanged(changed);
+            } else {
+                listener.onContactsUpdated();
+            }
+        }
+
+        if (sipContactsChanged) {
+            createChatShortcuts();
         }
+    }
+
+    private static Set<LinphoneContact> newContactsSet() {
+        // LinphoneContact.equals() compares their content
+        return Collections.newSetFromMap(new IdentityHashMap<LinphoneContact, Boolean>());
+    }
 
-        Compatibility.createChatShortcuts(mContext);
+    /** Shortcuts aren't needed to display the first frame, don't create them before. */
+    void createChatShortcuts() {
+        LinphoneContext.instance()
+                .getStartupOrchestrator()
+                .runDeferredStage(
+                        "Chat shortcuts",
+                        false,
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                Compatibility.createChatShortcuts(mContext);
+                            }
+                        });
     }
 }
@@ -19,26 +19,13 @@
  */
 package org.linphone.contacts;
 
-import android.os.AsyncTask;
+import java.util.Set;
 
-public class AsyncContactPresence extends AsyncTask<Void, AndroidContact, Void> {
-
-    private LinphoneContact mLinphoneContact;
-    private String mAlias;
-
-    public AsyncContactPresence(LinphoneContact linphoneContact, String alias) {
-        mLinphoneContact = linphoneContact;
-        mAlias = alias;
-    }
-
-    @Override
-    protected void onPreExecute() {
-        super.onPreExecute();
-    }
-
-    @Override
-    protected Void doInBackground(Void... voids) {
-        mLinphoneContact.addPresenceInfoToNativeContact(mAlias);
-        return null;
-    }
+/**
+ * Contacts listener told which contacts changed when only their presence did, instead of {@link
+ * #onContactsUpdated()}. Changes are batched, so it's called at most a few times per second.
+ */
+public interface ContactsPresenceListener extends ContactsUpdatedListener {
+    /** @param contacts those whose presence changed, compared by identity */
+    void onContactsPresenceChanged(Set<LinphoneContact> contacts);
 }
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone.contacts;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Searchable text of each contact: its name and organization without accents and in lower case,
+ * and the digits of its phone numbers. A contact matches a query if one of them contains it, those
+ * where the name starts with the query come first, then those where a word or number does.
+ *
+ * <p>Each contact also has a mask of the characters it contains, so most of them are rejected
+ * without looking at their text. The index isn't modified once built.
+ */
+class ContactsSearchIndex {
+    static final ContactsSearchIndex EMPTY =
+            new ContactsSearchIndex(new ArrayList<LinphoneContact>());
+
+    private static final int RANK_NAME_PREFIX = 0;
+    private static final int RANK_WORD_PREFIX = 1;
+    private static final int RANK_INFIX = 2;
+
+    private final List<LinphoneContact> mContacts;
+    private final String[] mTexts;
+    private final String[] mDigits;
+    private final long[] mMasks;
+
+    private ContactsSearchIndex(List<LinphoneContact> contacts) {
+        int size = contacts.size();
+        mContacts = contacts;
+        mTexts = new String[size];
+        mDigits = new String[size];
+        mMasks = new long[size];
+    }
+
+    /** @param contacts sorted as they should be displayed, not modified afterwards */
+    static ContactsSearchIndex build(List<LinphoneContact> contacts) {
+        ContactsSearchIndex index = new ContactsSearchIndex(contacts);
+        StringBuilder text = new StringBuilder();
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < contacts.size(); i++) {
+            LinphoneContact contact = contacts.get(i);
+            text.setLength(0);
+            digits.setLength(0);
+
+            if (contact.getFullName() != null) {
+                text.append(fold(contact.getFullName()));
+            }
+            if (contact.getOrganization() != null) {
+                text.append('\n').append(fold(contact.getOrganization()));
+            }
+            for (LinphoneNumberOrAddress noa : contact.getNumbersOrAddresses()) {
+                if (noa.isSIPAddress()) continue;
+                String number = digitsOf(noa.getValue());
+                if (number != null) {
+                    digits.append('\n').append(number);
+                }
+            }
+
+            index.mTexts[i] = text.toString();
+            index.mDigits[i] = digits.toString();
+            index.mMasks[i] = mask(index.mTexts[i]) | mask(index.mDigits[i]);
+        }
+        return index;
+    }
+
+    /**
+     * @param previous the result of a shorter query this one extends, or null
+     * @return the matching contacts, best matches first
+     */
+    Result search(String query, Result previous) {
+        String text = fold(query);
+        String digits = digitsOf(query);
+        long mask = mask(text);
+        long digitsMask = digits != null ? mask(digits) : 0;
+
+        int[] candidates = null;
+        if (previous != null
+                && previous.mIndex == this
+                && text.startsWith(previous.mText)
+                && (digits == null || previous.mDigits != null)) {
+            candidates = previous.mMatches;
+        }
+
+        int count = candidates != null ? candidates.length : mContacts.size();
+        int[] matches = new int[count];
+        byte[] ranks = new byte[count];
+        int found = 0;
+        for (int c = 0; c < count; c++) {
+            int i = candidates != null ? candidates[c] : c;
+            int rank = -1;
+            if ((mMasks[i] & mask) == mask) {
+                rank = rank(mTexts[i], text);
+            }
+            if (rank != RANK_NAME_PREFIX
+                    && digits != null
+                    && (mMasks[i] & digitsMask) == digitsMask) {
+                // Each number follows a \n, so at best it is a word prefix
+                int digitsRank = rank(mDigits[i], digits);
+                if (digitsRank >= 0 && (rank < 0 || digitsRank < rank)) {
+                    rank = digitsRank;
+                }
+            }
+            if (rank >= 0) {
+                matches[found] = i;
+                ranks[found] = (byte) rank;
+                found++;
+            }
+        }
+
+        int[] trimmedMatches = new int[found];
+        System.arraycopy(matches, 0, trimmedMatches, 0, found);
+        byte[] trimmedRanks = new byte[found];
+        System.arraycopy(ranks, 0, trimmedRanks, 0, found);
+        return new Result(this, text, digits, trimmedMatches, trimmedRanks);
+    }
+
+    /** @return the rank of the best match of query in text, or -1 if there is none */
+    private static int rank(String text, String query) {
+        int position = text.indexOf(query);
+        if (position < 0) return -1;
+        if (position == 0) return RANK_NAME_PREFIX;
+
+        while (position > 0) {
+            if (!Character.isLetterOrDigit(text.charAt(position - 1))) {
+                return RANK_WORD_PREFIX;
+            }
+            position = text.indexOf(query, position + 1);
+        }
+        return RANK_INFIX;
+    }
+
+    /** Lower case without diacritics, é and É both become e. */
+    static String fold(String s) {
+        boolean ascii = true;
+        for (int i = 0; i < s.length() && ascii; i++) {
+            ascii = s.charAt(i) < 0x80;
+        }
+        if (!ascii) {
+            String decomposed = Normalizer.normalize(s, Normalizer.Form.NFD);
+            StringBuilder sb = new StringBuilder(decomposed.length());
+            for (int i = 0; i < decomposed.length(); i++) {
+                char c = decomposed.charAt(i);
+                if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                    sb.append(c);
+                }
+            }
+            s = sb.toString();
+        }
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    /** @return the digits of something that looks like a phone number, null otherwise */
+    private static String digitsOf(String s) {
+        if (s == null) return null;
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                sb.append(c);
+            } else if (c != ' ' && c != '+' && c != '-' && c != '.' && c != '(' && c != ')') {
+                return null;
+            }
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    private static long mask(String s) {
+        long mask = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                mask |= 1L << (c - 'a');
+            } else if (c >= '0' && c <= '9') {
+                mask |= 1L << (26 + c - '0');
+            } else {
+                mask |= 1L << (36 + c % 28);
+            }
+        }
+        return mask;
+    }
+
+    /** Matches of a query, can be refined by a longer one. */
+    static class Result {
+        private final ContactsSearchIndex mIndex;
+        private final String mText;
+        private final String mDigits;
+        private final int[] mMatches;
+        private final byte[] mRanks;
+
+        private Result(
+                ContactsSearchIndex index,
+                String text,
+                String digits,
+                int[] matches,
+                byte[] ranks) {
+            mIndex = index;
+            mText = text;
+            mDigits = digits;
+            mMatches = matches;
+            mRanks = ranks;
+        }
+
+        boolean isFor(ContactsSearchIndex index) {
+            return mIndex == index;
+        }
+
+        /** @param filter contacts to keep, or null to keep them all */
+        List<LinphoneContact> getContacts(ContactsSnapshot filter) {
+            List<LinphoneContact> contacts = new ArrayList<>(mMatches.length);
+            for (int rank = RANK_NAME_PREFIX; rank <= RANK_INFIX; rank++) {
+                for (int m = 0; m < mMatches.length; m++) {
+                    if (mRanks[m] != rank) continue;
+                    LinphoneContact contact = mIndex.mContacts.get(mMatches[m]);
+                    if (filter == null || filter.isSipContact(contact)) {
+                        contacts.add(contact);
+                    }
+                }
+            }
+            return contacts;
+        }
+    }
+}
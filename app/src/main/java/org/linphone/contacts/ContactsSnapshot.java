@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone.contacts;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Contacts lists and lookup indexes as they were at a given time. A snapshot is never modified
+ * once published, so it can be read from any thread without locking: changes publish a new one
+ * with a higher version.
+ */
+public class ContactsSnapshot {
+    static final ContactsSnapshot EMPTY =
+            new ContactsSnapshot(
+                    0,
+                    false,
+                    Collections.<LinphoneContact>emptyList(),
+                    Collections.<LinphoneContact>emptyList(),
+                    Collections.<String, LinphoneContact>emptyMap(),
+                    Collections.<String, LinphoneContact>emptyMap(),
+                    null,
+                    ContactsSearchIndex.EMPTY);
+
+    private final long mVersion;
+    private final boolean mIndexed;
+    private final List<LinphoneContact> mContacts;
+    private final List<LinphoneContact> mSipContacts;
+    private final Set<LinphoneContact> mSipContactsSet;
+    private final Map<String, LinphoneContact> mByAndroidId;
+    private final Map<String, LinphoneContact> mByAddress;
+    private final PhoneNumberIndex mPhoneNumberIndex;
+    private final ContactsSearchIndex mSearchIndex;
+
+    private ContactsSnapshot(
+            long version,
+            boolean indexed,
+            List<LinphoneContact> contacts,
+            List<LinphoneContact> sipContacts,
+            Map<String, LinphoneContact> byAndroidId,
+            Map<String, LinphoneContact> byAddress,
+            PhoneNumberIndex phoneNumberIndex,
+            ContactsSearchIndex searchIndex) {
+        mVersion = version;
+        mIndexed = indexed;
+        mContacts = Collections.unmodifiableList(contacts);
+        mSipContacts = Collections.unmodifiableList(sipContacts);
+        mSipContactsSet =
+                Collections.newSetFromMap(new IdentityHashMap<LinphoneContact, Boolean>());
+        mSipContactsSet.addAll(sipContacts);
+        mByAndroidId = byAndroidId;
+        mByAddress = byAddress;
+        mPhoneNumberIndex = phoneNumberIndex;
+        mSearchIndex = searchIndex;
+    }
+
+    /** Increases each time a new snapshot is published. */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    public List<LinphoneContact> getContacts() {
+        return mContacts;
+    }
+
+    public List<LinphoneContact> getSipContacts() {
+        return mSipContacts;
+    }
+
+    /** Whether the indexes come from a sync, before that lookups have to go through the Core. */
+    boolean isIndexed() {
+        return mIndexed;
+    }
+
+    boolean isSipContact(LinphoneContact contact) {
+        return mSipContactsSet.contains(contact);
+    }
+
+    LinphoneContact findFromAndroidId(String androidId) {
+        return mByAndroidId.get(androidId);
+    }
+
+    LinphoneContact findFromAddress(String username, String domain) {
+        if (username == null || domain == null) return null;
+        return mByAddress.get(username + "@" + domain.toLowerCase(Locale.US));
+    }
+
+    PhoneNumberIndex getPhoneNumberIndex() {
+        return mPhoneNumberIndex;
+    }
+
+    ContactsSearchIndex getSearchIndex() {
+        return mSearchIndex;
+    }
+
+    /** The result of a sync, with indexes built by {@link #indexByAndroidId(Collection)} and co. */
+    ContactsSnapshot withContacts(
+            List<LinphoneContact> contacts,
+            List<LinphoneContact> sipContacts,
+            Map<String, LinphoneContact> byAndroidId,
+            Map<String, LinphoneContact> byAddress,
+            PhoneNumberIndex phoneNumberIndex,
+            ContactsSearchIndex searchIndex) {
+        return new ContactsSnapshot(
+                mVersion + 1,
+                true,
+                contacts,
+                sipContacts,
+                byAndroidId,
+                byAddress,
+                phoneNumberIndex,
+                searchIndex);
+    }
+
+    ContactsSnapshot withSipContacts(List<LinphoneContact> sipContacts) {
+        return new ContactsSnapshot(
+                mVersion + 1,
+                mIndexed,
+                mContacts,
+                sipContacts,
+                mByAndroidId,
+                mByAddress,
+                mPhoneNumberIndex,
+                mSearchIndex);
+    }
+
+    ContactsSnapshot withPhoneNumberIndex(PhoneNumberIndex phoneNumberIndex) {
+        return new ContactsSnapshot(
+                mVersion + 1,
+                mIndexed,
+                mContacts,
+                mSipContacts,
+                mByAndroidId,
+                mByAddress,
+                phoneNumberIndex,
+                mSearchIndex);
+    }
+
+    ContactsSnapshot cleared() {
+        return new ContactsSnapshot(
+                mVersion + 1,
+                false,
+                Collections.<LinphoneContact>emptyList(),
+                Collections.<LinphoneContact>emptyList(),
+                Collections.<String, LinphoneContact>emptyMap(),
+                Collections.<String, LinphoneContact>emptyMap(),
+                null,
+                ContactsSearchIndex.EMPTY);
+    }
+
+    static Map<String, LinphoneContact> indexByAndroidId(Collection<LinphoneContact> contacts) {
+        HashMap<String, LinphoneContact> index = new HashMap<>(capacityFor(contacts.size()));
+        for (LinphoneContact contact : contacts) {
+            if (contact.getAndroidId() != null) {
+                index.put(contact.getAndroidId(), contact);
+            }
+        }
+        return index;
+    }
+
+    static Map<String, LinphoneContact> indexByAddress(Collection<LinphoneContact> contacts) {
+        HashMap<String, LinphoneContact> index = new HashMap<>(capacityFor(contacts.size()));
+        for (LinphoneContact contact : contacts) {
+            for (LinphoneNumberOrAddress noa : contact.getNumbersOrAddresses()) {
+                if (!noa.isSIPAddress()) continue;
+                String key = addressKey(noa.getValue());
+                // Same behavior as liblinphone when two contacts share an address
+                if (key != null && !index.containsKey(key)) {
+                    index.put(key, contact);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * username@domain, without the scheme, port and parameters of the URI. The addresses without
+     * domain aren't indexed, they are found by the Core.
+     */
+    private static String addressKey(String uri) {
+        if (uri == null) return null;
+
+        int start = uri.indexOf('<') + 1;
+        if (uri.startsWith("sip:", start)) {
+            start += 4;
+        } else if (uri.startsWith("sips:", start)) {
+            start += 5;
+        }
+        int at = uri.indexOf('@', start);
+        if (at < 0) return null;
+
+        int end = at + 1;
+        while (end < uri.length()) {
+            char c = uri.charAt(end);
+            if (c == ':' || c == ';' || c == '>' || c == '?') break;
+            end++;
+        }
+        return uri.substring(start, at) + "@" + uri.substring(at + 1, end).toLowerCase(Locale.US);
+    }
+
+    private static int capacityFor(int size) {
+        // Default load factor is 0.75
+        return Math.max(16, (int) (size / 0.75f) + 1);
+    }
+}
@@ -24,12 +24,14 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.provider.ContactsContract;
 import java.io.Serializable;
+import java.text.CollationKey;
 import java.text.Collator;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
 import org.linphone.LinphoneContext;
 import org.linphone.LinphoneManager;
-import org.linphone.R;
 import org.linphone.core.Address;
 import org.linphone.core.Core;
 import org.linphone.core.Friend;
@@ -38,17 +40,33 @@ import org.linphone.core.PresenceBasicStatus;
 import org.linphone.core.PresenceModel;
 import org.linphone.core.SubscribePolicy;
 import org.linphone.core.tools.Log;
+import org.linphone.utils.LazyLog;
 
 public class LinphoneContact extends AndroidContact
         implements Serializable, Comparable<LinphoneContact> {
     private static final long serialVersionUID = 9015568163905205244L;
 
+    // Shared by every contact, recreated if the default locale changes
+    private static Collator sCollator;
+    private static Locale sCollatorLocale;
+    private static int sCollatorGeneration;
+
     private transient Friend mFriend;
     private String mFullName, mFirstName, mLastName, mOrganization;
     private transient Uri mPhotoUri, mThumbnailUri;
     private List<LinphoneNumberOrAddress> mAddresses;
     private boolean mHasSipAddress;
     private boolean mIsStarred;
+    // Of the Android contact picture, they change when it is replaced
+    private long mPhotoId, mPhotoFileId;
+    // Collation key of the full name, only computed again when the name changes
+    private transient CollationKey mSortKey;
+    private transient int mSortKeyGeneration;
+    // Ids of the contacts that aren't Android ones, negative so they can't clash
+    private static final AtomicLong sNextLocalId = new AtomicLong(-1);
+    private transient long mLocalId;
+    // Increased each time presence is received for one of its numbers or addresses
+    private transient volatile int mPresenceVersion;
 
     public LinphoneContact() {
         super();
@@ -85,6 +103,32 @@ public class LinphoneContact extends AndroidContact
         return null;
     }
 
+    /** @return an id that doesn't change for the lifetime of this contact, for the lists */
+    public long getStableId() {
+        String androidId = mAndroidId;
+        if (androidId != null) {
+            try {
+                return Long.parseLong(androidId);
+            } catch (NumberFormatException nfe) {
+                // Falls back to a local id
+            }
+        }
+        synchronized (this) {
+            if (mLocalId == 0) {
+                mLocalId = sNextLocalId.getAndDecrement();
+            }
+            return mLocalId;
+        }
+    }
+
+    int getPresenceVersion() {
+        return mPresenceVersion;
+    }
+
+    void onPresenceChanged() {
+        mPresenceVersion++;
+    }
+
     @Override
     public int compareTo(LinphoneContact contact) {
         String fullName = getFullName() != null ? getFullName() : "";
@@ -116,9 +160,30 @@ public class LinphoneContact extends AndroidContact
             return id.compareTo(contactId);
         }
 
-        Collator collator = Collator.getInstance();
-        collator.setStrength(Collator.NO_DECOMPOSITION);
-        return collator.compare(fullName, contactFullName);
+        return getSortKey().compareTo(contact.getSortKey());
+    }
+
+    private CollationKey getSortKey() {
+        String name = mFullName != null ? mFullName : "";
+        CollationKey key = mSortKey;
+        if (key == null
+                || mSortKeyGeneration != sCollatorGeneration
+                || Locale.getDefault() != sCollatorLocale
+                || !name.equals(key.getSourceString())) {
+            synchronized (LinphoneContact.class) {
+                Locale locale = Locale.getDefault();
+                if (sCollator == null || !locale.equals(sCollatorLocale)) {
+                    sCollator = Collator.getInstance(locale);
+                    sCollator.setStrength(Collator.PRIMARY);
+                    sCollatorLocale = locale;
+                    sCollatorGeneration += 1;
+                }
+                key = sCollator.getCollationKey(name);
+                mSortKeyGeneration = sCollatorGeneration;
+            }
+            mSortKey = key;
+        }
+        return key;
     }
 
     @Override
@@ -209,6 +274,16 @@ public class LinphoneContact extends AndroidContact
         return mThumbnailUri;
     }
 
+    /** @return id of the picture data row, 0 if unknown */
+    public long getPhotoId() {
+        return mPhotoId;
+    }
+
+    /** @return id of the full size picture file, 0 if unknown or there is only a thumbnail */
+    public long getPhotoFileId() {
+        return mPhotoFileId;
+    }
+
     private void setThumbnailUri(Uri uri) {
         if (uri != null && uri.equals(mThumbnailUri)) return;
         mThumbnailUri = uri;
@@ -232,7 +307,7 @@ public class LinphoneContact extends AndroidContact
                         || (noa.isSIPAddress()
                                 && noa.getValue().equals(number.getNormalizedPhone()))
                         || (normalizedPhone != null && normalizedPhone.equals(number.getValue()))) {
-                    Log.d("[Linphone Contact] Duplicated entry detected: " + noa);
+                    LazyLog.d("[Linphone Contact] Duplicated entry detected: ", noa);
                     found = true;
                     break;
                 }
@@ -558,26 +633,33 @@ public class LinphoneContact extends AndroidContact
 
         if (c != null) {
             mAddresses = new ArrayList<>();
+            AsyncContactsLoader.CursorColumns columns =
+                    new AsyncContactsLoader.CursorColumns(c, context);
             while (c.moveToNext()) {
-                syncValuesFromAndroidCusor(c);
+                syncValuesFromAndroidCusor(c, columns);
             }
             c.close();
         }
     }
 
-    public void syncValuesFromAndroidCusor(Cursor c) {
-        String displayName =
-                c.getString(c.getColumnIndex(ContactsContract.Data.DISPLAY_NAME_PRIMARY));
+    void syncValuesFromAndroidCusor(Cursor c, AsyncContactsLoader.CursorColumns columns) {
+        String displayName = c.getString(columns.displayName);
 
-        String mime = c.getString(c.getColumnIndex(ContactsContract.Data.MIMETYPE));
-        String data1 = c.getString(c.getColumnIndex("data1"));
-        String data2 = c.getString(c.getColumnIndex("data2"));
-        String data3 = c.getString(c.getColumnIndex("data3"));
-        String data4 = c.getString(c.getColumnIndex("data4"));
+        String mime = c.getString(columns.mime);
+        String data1 = c.getString(columns.data1);
+        String data2 = c.getString(columns.data2);
+        String data3 = c.getString(columns.data3);
+        String data4 = c.getString(columns.data4);
+        if (columns.photoId >= 0) {
+            mPhotoId = c.getLong(columns.photoId);
+        }
+        if (columns.photoFileId >= 0) {
+            mPhotoFileId = c.getLong(columns.photoFileId);
+        }
 
         String fullName = getFullName();
         if (fullName == null || !fullName.equals(displayName)) {
-            Log.d("[Linphone Contact] Setting display name " + displayName);
+            LazyLog.d("[Linphone Contact] Setting display name ", displayName);
             setFullName(displayName);
         }
 
@@ -587,19 +669,16 @@ public class LinphoneContact extends AndroidContact
                 return;
             }
 
-            Log.d("[Linphone Contact] Found phone number " + data1 + " (" + data4 + ")");
+            LazyLog.d("[Linphone Contact] Found phone number ", data1, " (", data4, ")");
             addNumberOrAddress(new LinphoneNumberOrAddress(data1, data4));
         } else if (ContactsContract.CommonDataKinds.SipAddress.CONTENT_ITEM_TYPE.equals(mime)
-                || LinphoneContext.instance()
-                        .getApplicationContext()
-                        .getString(R.string.linphone_address_mime_type)
-                        .equals(mime)) {
+                || columns.linphoneMimeType.equals(mime)) {
             if (data1 == null) {
                 Log.e("[Linphone Contact] SIP address is null !");
                 return;
             }
 
-            Log.d("[Linphone Contact] Found SIP address " + data1);
+            LazyLog.d("[Linphone Contact] Found SIP address ", data1);
             addNumberOrAddress(new LinphoneNumberOrAddress(data1, true));
         } else if (ContactsContract.CommonDataKinds.Organization.CONTENT_ITEM_TYPE.equals(mime)) {
             if (data1 == null) {
@@ -607,7 +686,7 @@ public class LinphoneContact extends AndroidContact
                 return;
             }
 
-            Log.d("[Linphone Contact] Found organization " + data1);
+            LazyLog.d("[Linphone Contact] Found organization ", data1);
             setOrganization(data1, false);
         } else if (ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE.equals(mime)) {
             if (data2 == null && data3 == null) {
@@ -615,28 +694,13 @@ public class LinphoneContact extends AndroidContact
                 return;
             }
 
-            Log.d("[Linphone Contact] Found first name " + data2 + " and last name " + data3);
+            LazyLog.d("[Linphone Contact] Found first name ", data2, " and last name ", data3);
             setFirstNameAndLastName(data2, data3, false);
         } else {
-            Log.d("[Linphone Contact] Skipping unused MIME type " + mime);
+            LazyLog.d("[Linphone Contact] Skipping unused MIME type ", mime);
         }
     }
 
-    public synchronized void addPresenceInfoToNativeContact(String value) {
-        Log.d(
-                "[Contact] Trying to update native contact with presence information for phone number ",
-                value);
-
-        // Creation of the raw contact with the presence information (tablet)
-        createRawLinphoneContactFromExistingAndroidContactIfNeeded();
-
-        if (!isLinphoneAddressMimeEntryAlreadyExisting(value)) {
-            // Do the action on the contact only once if it has not been done yet
-            updateNativeContactWithPresenceInfo(value);
-        }
-        saveChangesCommited();
-    }
-
     public void save() {
         saveChangesCommited();
         if (getAndroidId() != null) {
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone.contacts;
+
+import android.content.ContentProviderOperation;
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.linphone.R;
+import org.linphone.core.tools.Log;
+
+/**
+ * Stores in the native contacts the numbers whose presence is online. Values are queued and
+ * written once per window: a single query finds those already stored, and a single transaction
+ * inserts the others, instead of a query and a transaction for each number of each NOTIFY.
+ */
+class NativePresenceWriter {
+    private static final long FLUSH_WINDOW = 1000; // ms
+    // Raw contacts ids per query, SQLite allows 999 parameters
+    private static final int QUERY_CHUNK_SIZE = 500;
+    // Values remembered as stored, the least recently used ones are checked again when needed
+    private static final int STORED_CACHE_SIZE = 2048;
+
+    private final Context mContext;
+    private final String mMimeType;
+    private final ScheduledExecutorService mExecutor;
+
+    // Guarded by this
+    private Map<LinphoneContact, Set<String>> mPending = new IdentityHashMap<>();
+    private int mPendingRequests = 0;
+    private boolean mFlushScheduled = false;
+
+    // Only used on the writer thread, values known to be stored, as raw contact id + value
+    private final LinkedHashMap<String, Boolean> mStored =
+            new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > STORED_CACHE_SIZE;
+                }
+            };
+    private long mTotalTransactions = 0;
+    private long mTotalSavedTransactions = 0;
+
+    NativePresenceWriter(Context context) {
+        mContext = context.getApplicationContext();
+        mMimeType = mContext.getString(R.string.linphone_address_mime_type);
+        mExecutor =
+                Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                return new Thread(r, "Native presence writer");
+                            }
+                        });
+    }
+
+    /** Queues the storage of a number of the contact, can be called from any thread. */
+    void add(LinphoneContact contact, String value) {
+        // Numbers with presence stored were loaded as SIP addresses of the contact
+        for (LinphoneNumberOrAddress noa : contact.getNumbersOrAddresses()) {
+            if (noa.isSIPAddress() && value.equals(noa.getValue())) return;
+        }
+
+        synchronized (this) {
+            Set<String> values = mPending.get(contact);
+            if (values == null) {
+                values = new LinkedHashSet<>();
+                mPending.put(contact, values);
+            }
+            values.add(value);
+            mPendingRequests += 1;
+
+            if (!mFlushScheduled) {
+                mFlushScheduled = true;
+                mExecutor.schedule(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                flush();
+                            }
+                        },
+                        FLUSH_WINDOW,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    void destroy() {
+        mExecutor.shutdownNow();
+    }
+
+    private void flush() {
+        Map<LinphoneContact, Set<String>> pending;
+        int requests;
+        synchronized (this) {
+            pending = mPending;
+            requests = mPendingRequests;
+            mPending = new IdentityHashMap<>();
+            mPendingRequests = 0;
+            mFlushScheduled = false;
+        }
+        if (!ContactsManager.getInstance().hasReadContactsAccess()) return;
+
+        // The values are stored in a raw contact of the Linphone account, created if needed
+        Map<String, LinphoneContact> contactsByRawId = new HashMap<>();
+        // Those with values not known to be stored
+        List<String> rawIds = new ArrayList<>();
+        for (LinphoneContact contact : pending.keySet()) {
+            String rawId;
+            synchronized (contact) {
+                // Never in the raw contact of another account, it would be synced with it
+                if (!contact.createRawLinphoneContactFromExistingAndroidContactIfNeeded()) {
+                    continue;
+                }
+                rawId = contact.getAndroidRawId();
+            }
+            if (rawId == null) continue;
+            contactsByRawId.put(rawId, contact);
+            for (String value : pending.get(contact)) {
+                if (mStored.get(rawId + "\n" + value) == null) {
+                    // Other apps may have removed values stored before, they are queried again
+                    rawIds.add(rawId);
+                    break;
+                }
+            }
+        }
+
+        int transactions = 0;
+        // Not only in mStored, which may have already evicted some of them
+        Set<String> found = new HashSet<>();
+        for (int i = 0; i < rawIds.size(); i += QUERY_CHUNK_SIZE) {
+            queryStoredValues(
+                    rawIds.subList(i, Math.min(i + QUERY_CHUNK_SIZE, rawIds.size())), found);
+            transactions += 1;
+        }
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, LinphoneContact> entry : contactsByRawId.entrySet()) {
+            LinphoneContact contact = entry.getValue();
+            for (String value : pending.get(contact)) {
+                String key = entry.getKey() + "\n" + value;
+                if (found.contains(key) || mStored.get(key) != null) continue;
+                synchronized (contact) {
+                    operations.add(contact.createPresenceInfoOperation(value));
+                }
+                keys.add(key);
+            }
+        }
+
+        if (!operations.isEmpty()) {
+            try {
+                mContext.getContentResolver().applyBatch(ContactsContract.AUTHORITY, operations);
+                for (String key : keys) {
+                    mStored.put(key, Boolean.TRUE);
+                }
+            } catch (Exception e) {
+                Log.e("[Native Presence] Can't store presence information: ", e);
+            }
+            transactions += 1;
+        }
+
+        // Each value used to be a query, plus a transaction when it wasn't stored yet
+        long saved = requests + operations.size() - transactions;
+        mTotalTransactions += transactions;
+        mTotalSavedTransactions += saved;
+        Log.i(
+                "[Native Presence] ",
+                requests,
+                " values of ",
+                pending.size(),
+                " contacts, ",
+                operations.size(),
+                " stored with ",
+                transactions,
+                " provider transactions, ",
+                saved,
+                " saved (",
+                mTotalSavedTransactions,
+                " saved, ",
+                mTotalTransactions,
+                " done since start)");
+    }
+
+    /** Adds the values already stored in these raw contacts to found and mStored. */
+    private void queryStoredValues(List<String> rawIds, Set<String> found) {
+        StringBuilder selection = new StringBuilder();
+        selection.append(ContactsContract.Data.MIMETYPE).append(" = ? AND ");
+        selection.append(ContactsContract.Data.RAW_CONTACT_ID).append(" IN (");
+        String[] args = new String[rawIds.size() + 1];
+        args[0] = mMimeType;
+        for (int i = 0; i < rawIds.size(); i++) {
+            selection.append(i == 0 ? "?" : ",?");
+            args[i + 1] = rawIds.get(i);
+        }
+        selection.append(")");
+
+        Cursor c = null;
+        try {
+            c =
+                    mContext.getContentResolver()
+                            .query(
+                                    ContactsContract.Data.CONTENT_URI,
+                                    new String[] {ContactsContract.Data.RAW_CONTACT_ID, "data1"},
+                                    selection.toString(),
+                                    args,
+                                    null);
+            if (c == null) return;
+            while (c.moveToNext()) {
+                String key = c.getString(0) + "\n" + c.getString(1);
+                found.add(key);
+                mStored.put(key, Boolean.TRUE);
+            }
+        } catch (Exception e) {
+            Log.e("[Native Presence] Can't query stored presence information: ", e);
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone.contacts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Contacts by phone number, normalized to the E.164 format using the dial prefix of the default
+ * proxy config. Numbers are normalized in Java so most lookups don't need any call to
+ * liblinphone, those it doesn't find are looked up again with its dial plans.
+ *
+ * <p>An index is built by the contacts loader and isn't modified once published, incremental
+ * syncs update a copy of it. Lists of owners are shared between copies, so they are replaced
+ * instead of being modified.
+ */
+class PhoneNumberIndex {
+    // Country calling codes whose national numbers start with a 0 trunk prefix dropped after the
+    // country code. Others (like Italy, where the 0 is part of the number) keep their leading 0.
+    private static final HashSet<String> TRUNK_ZERO_PREFIXES =
+            new HashSet<>(
+                    Arrays.asList(
+                            "20", "27", "31", "32", "33", "41", "43", "44", "46", "49", "61", "62",
+                            "63", "64", "66", "81", "82", "84", "86", "90", "91", "92", "98", "234",
+                            "254", "353", "358", "380", "880", "972"));
+
+    private final String mDialPrefix;
+    // Every contact having the number, the first one is returned
+    private final HashMap<String, List<LinphoneContact>> mContacts;
+    // Keys of each contact, needed to remove it once its numbers have changed
+    private final IdentityHashMap<LinphoneContact, List<String>> mKeys;
+
+    PhoneNumberIndex(String dialPrefix, int expectedNumbers) {
+        mDialPrefix = dialPrefix;
+        mContacts = new HashMap<>(Math.max(16, (int) (expectedNumbers / 0.75f) + 1));
+        mKeys = new IdentityHashMap<>();
+    }
+
+    private PhoneNumberIndex(PhoneNumberIndex index) {
+        mDialPrefix = index.mDialPrefix;
+        mContacts = new HashMap<>(index.mContacts);
+        mKeys = new IdentityHashMap<>(index.mKeys);
+    }
+
+    static PhoneNumberIndex build(Collection<LinphoneContact> contacts, String dialPrefix) {
+        PhoneNumberIndex index = new PhoneNumberIndex(dialPrefix, contacts.size());
+        for (LinphoneContact contact : contacts) {
+            index.add(contact);
+        }
+        return index;
+    }
+
+    PhoneNumberIndex copy() {
+        return new PhoneNumberIndex(this);
+    }
+
+    boolean isFor(String dialPrefix) {
+        return mDialPrefix == null ? dialPrefix == null : mDialPrefix.equals(dialPrefix);
+    }
+
+    int size() {
+        return mContacts.size();
+    }
+
+    void add(LinphoneContact contact) {
+        List<String> keys = new ArrayList<>();
+        for (LinphoneNumberOrAddress noa : contact.getNumbersOrAddresses()) {
+            if (noa.isSIPAddress()) continue;
+            addKey(keys, normalize(noa.getValue(), mDialPrefix), contact);
+            addKey(keys, normalize(noa.getNormalizedPhone(), mDialPrefix), contact);
+        }
+        if (!keys.isEmpty()) {
+            mKeys.put(contact, keys);
+        }
+    }
+
+    void remove(LinphoneContact contact) {
+        List<String> keys = mKeys.remove(contact);
+        if (keys == null) return;
+        for (String key : keys) {
+            List<LinphoneContact> owners = mContacts.get(key);
+            if (owners == null) continue;
+            if (owners.size() == 1) {
+                if (owners.get(0) == contact) {
+                    mContacts.remove(key);
+                }
+                continue;
+            }
+
+            // The number stays with the other contacts having it
+            List<LinphoneContact> remaining = new ArrayList<>(owners.size() - 1);
+            for (LinphoneContact owner : owners) {
+                if (owner != contact) {
+                    remaining.add(owner);
+                }
+            }
+            mContacts.put(key, remaining);
+        }
+    }
+
+    LinphoneContact find(String phoneNumber) {
+        String key = normalize(phoneNumber, mDialPrefix);
+        if (key == null) return null;
+        List<LinphoneContact> owners = mContacts.get(key);
+        return owners != null ? owners.get(0) : null;
+    }
+
+    private void addKey(List<String> keys, String key, LinphoneContact contact) {
+        if (key == null || keys.contains(key)) return;
+        keys.add(key);
+
+        List<LinphoneContact> owners = mContacts.get(key);
+        if (owners == null) {
+            mContacts.put(key, Collections.singletonList(contact));
+        } else {
+            // Same behavior as liblinphone when two contacts share a number, the first one wins
+            List<LinphoneContact> added = new ArrayList<>(owners.size() + 1);
+            added.addAll(owners);
+            added.add(contact);
+            mContacts.put(key, added);
+        }
+    }
+
+    /**
+     * Keeps the digits and a leading +, replaces the 00 international prefix by a + and prefixes
+     * national numbers with the dial prefix, after removing their trunk 0 for the countries known
+     * to use one.
+     *
+     * @return null if it doesn't look like a phone number
+     */
+    static String normalize(String number, String dialPrefix) {
+        if (number == null) return null;
+
+        StringBuilder digits = new StringBuilder(number.length() + 4);
+        boolean international = false;
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if (c == '+' && digits.length() == 0 && !international) {
+                international = true;
+            } else if (c != ' ' && c != '-' && c != '.' && c != '(' && c != ')' && c != '/') {
+                return null;
+            }
+        }
+        if (digits.length() < 3) return null;
+
+        if (!international && digits.charAt(0) == '0' && digits.charAt(1) == '0') {
+            digits.delete(0, 2);
+            international = true;
+        }
+        if (!international && dialPrefix != null && !dialPrefix.isEmpty()) {
+            String countryCode = dialPrefix.startsWith("+") ? dialPrefix.substring(1) : dialPrefix;
+            if (digits.charAt(0) == '0' && TRUNK_ZERO_PREFIXES.contains(countryCode)) {
+                digits.deleteCharAt(0);
+            }
+            digits.insert(0, countryCode);
+            international = true;
+        }
+        if (international) {
+            digits.insert(0, '+');
+        }
+        return digits.toString();
+    }
+}
@@ -23,29 +23,24 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
-import org.linphone.LinphoneContext;
-import org.linphone.LinphoneManager;
 import org.linphone.R;
 import org.linphone.contacts.views.ContactAvatar;
 import org.linphone.core.Address;
-import org.linphone.core.Core;
-import org.linphone.core.FriendCapability;
-import org.linphone.core.PresenceBasicStatus;
-import org.linphone.core.PresenceModel;
-import org.linphone.core.ProxyConfig;
 import org.linphone.core.SearchResult;
 
-public class SearchContactsAdapter extends RecyclerView.Adapter<SearchContactViewHolder> {
+public class SearchContactsAdapter extends RecyclerView.Adapter<SearchContactViewHolder>
+        implements AsyncMagicSearch.Listener {
+    private List<AsyncMagicSearch.Entry> mEntries;
     private List<SearchResult> mContacts;
+    private final AsyncMagicSearch mSearch;
     private ArrayList<ContactAddress> mContactsSelected;
     private boolean mOnlySipContact = false;
     private final SearchContactViewHolder.ClickListener mListener;
     private final boolean mIsOnlyOnePersonSelection;
-    private String mPreviousSearch;
     private boolean mSecurityEnabled;
 
     public SearchContactsAdapter(
@@ -55,9 +50,10 @@ public class SearchContactsAdapter extends RecyclerView.Adapter<SearchContactVie
         mIsOnlyOnePersonSelection = hideSelectionMark;
         mListener = clickListener;
         setContactsSelectedList(null);
-        mPreviousSearch = null;
         mSecurityEnabled = isSecurityEnabled;
+        mEntries = new ArrayList<>();
         mContacts = new ArrayList<>();
+        mSearch = new AsyncMagicSearch(this);
     }
 
     public List<SearchResult> getContacts() {
@@ -84,27 +80,10 @@ public class SearchContactsAdapter extends RecyclerView.Adapter<SearchContactVie
 
     @Override
     public void onBindViewHolder(@NonNull SearchContactViewHolder holder, int position) {
-        SearchResult searchResult = getItem(position);
-
-        LinphoneContact contact;
-        if (searchResult.getFriend() != null && searchResult.getFriend().getUserData() != null) {
-            contact = (LinphoneContact) searchResult.getFriend().getUserData();
-        } else {
-            if (searchResult.getAddress() == null) {
-                contact =
-                        ContactsManager.getInstance()
-                                .findContactFromPhoneNumber(searchResult.getPhoneNumber());
-            } else {
-                contact =
-                        ContactsManager.getInstance()
-                                .findContactFromAddress(searchResult.getAddress());
-            }
-        }
-
-        final String numberOrAddress =
-                (searchResult.getPhoneNumber() != null)
-                        ? searchResult.getPhoneNumber()
-                        : searchResult.getAddress().asStringUriOnly();
+        AsyncMagicSearch.Entry entry = mEntries.get(position);
+        SearchResult searchResult = entry.searchResult;
+        LinphoneContact contact = entry.contact;
+        final String numberOrAddress = entry.numberOrAddress;
 
         holder.name.setVisibility(View.GONE);
         if (contact != null && contact.getFullName() != null) {
@@ -122,14 +101,9 @@ public class SearchContactsAdapter extends RecyclerView.Adapter<SearchContactVie
         holder.disabled.setVisibility(View.GONE);
 
         if (mSecurityEnabled || !mIsOnlyOnePersonSelection) {
-            Core core = LinphoneManager.getCore();
-            ProxyConfig defaultProxyConfig = core.getDefaultProxyConfig();
-            if (defaultProxyConfig != null && searchResult.getAddress() != null) {
-                // SDK won't accept ourselves in the list of participants
-                if (defaultProxyConfig.getIdentityAddress().weakEqual(searchResult.getAddress())) {
-                    // Disable row, we can't use our own address in a group chat room
-                    holder.disabled.setVisibility(View.VISIBLE);
-                }
+            if (entry.isOwnAddress) {
+                // Disable row, we can't use our own address in a group chat room
+                holder.disabled.setVisibility(View.VISIBLE);
             }
         }
 
@@ -139,15 +113,10 @@ public class SearchContactsAdapter extends RecyclerView.Adapter<SearchContactVie
                     && contact.getLastName() == null) {
                 contact.setFullName(holder.name.getText().toString());
             }
-            ContactAvatar.displayAvatar(
-                    contact,
-                    contact.hasFriendCapability(FriendCapability.LimeX3Dh),
-                    holder.avatarLayout);
+            ContactAvatar.displayAvatar(contact, entry.contactHasLimeX3Dh, holder.avatarLayout);
 
-            if ((!mIsOnlyOnePersonSelection
-                            && !searchResult.hasCapability(FriendCapability.GroupChat))
-                    || (mSecurityEnabled
-                            && !searchResult.hasCapability(FriendCapability.LimeX3Dh))) {
+            if ((!mIsOnlyOnePersonSelection && !entry.hasGroupChat)
+                    || (mSecurityEnabled && !entry.hasLimeX3Dh)) {
                 // Disable row, contact doesn't have the required capabilities
                 holder.disabled.setVisibility(View.VISIBLE);
             }
@@ -158,10 +127,7 @@ public class SearchContactsAdapter extends RecyclerView.Adapter<SearchContactVie
         holder.address.setText(numberOrAddress);
         if (holder.linphoneContact != null) {
             holder.linphoneContact.setVisibility(View.GONE);
-            if (searchResult.getFriend() != null
-                    && contact != null
-                    && contact.getBasicStatusFromPresenceModelForUriOrTel(numberOrAddress)
-                            == PresenceBasicStatus.Open) {
+            if (entry.presenceOpen) {
                 holder.linphoneContact.setVisibility(View.VISIBLE);
             }
         }
@@ -219,57 +185,34 @@ public class SearchContactsAdapter extends RecyclerView.Adapter<SearchContactVie
         }
     }
 
-    private SearchResult getItem(int position) {
-        return mContacts.get(position);
-    }
-
     @Override
     public int getItemCount() {
-        return mContacts.size();
+        return mEntries.size();
     }
 
+    /** Results are displayed once the search, done on the Core thread, is over. */
     public void searchContacts(String search) {
-        List<SearchResult> result = new ArrayList<>();
+        mSearch.search(search, mOnlySipContact, mEntries);
+    }
 
-        if (mPreviousSearch != null) {
-            if (mPreviousSearch.length() > search.length()) {
-                ContactsManager.getInstance().getMagicSearch().resetSearchCache();
-            }
-        }
-        mPreviousSearch = search;
+    /** The next search won't refine the results of the previous one. */
+    public void resetSearchCache() {
+        mSearch.resetCache();
+    }
 
-        String domain = "";
-        ProxyConfig prx = Objects.requireNonNull(LinphoneManager.getCore()).getDefaultProxyConfig();
-        if (prx != null) domain = prx.getDomain();
-        SearchResult[] searchResults =
-                ContactsManager.getInstance()
-                        .getMagicSearch()
-                        .getContactListFromFilter(search, mOnlySipContact ? domain : "");
+    /** Drops the results of the searches still running, the adapter is going away. */
+    public void cancelSearch() {
+        mSearch.cancel();
+    }
 
-        for (SearchResult sr : searchResults) {
-            if (LinphoneContext.instance()
-                    .getApplicationContext()
-                    .getResources()
-                    .getBoolean(R.bool.hide_sip_contacts_without_presence)) {
-                if (sr.getFriend() != null) {
-                    PresenceModel pm =
-                            sr.getFriend()
-                                    .getPresenceModelForUriOrTel(sr.getAddress().asStringUriOnly());
-                    if (pm != null && pm.getBasicStatus().equals(PresenceBasicStatus.Open)) {
-                        result.add(sr);
-                    } else {
-                        pm = sr.getFriend().getPresenceModelForUriOrTel(sr.getPhoneNumber());
-                        if (pm != null && pm.getBasicStatus().equals(PresenceBasicStatus.Open)) {
-                            result.add(sr);
-                        }
-                    }
-                }
-            } else {
-                result.add(sr);
-            }
+    @Override
+    public void onSearchDone(List<AsyncMagicSearch.Entry> entries, DiffUtil.DiffResult diff) {
+        List<SearchResult> contacts = new ArrayList<>(entries.size());
+        for (AsyncMagicSearch.Entry entry : entries) {
+            contacts.add(entry.searchResult);
         }
-
-        mContacts = result;
-        notifyDataSetChanged();
+        mEntries = entries;
+        mContacts = contacts;
+        diff.dispatchUpdatesTo(this);
     }
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone.contacts.views;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import org.linphone.core.tools.Log;
+
+/**
+ * Round contacts pictures already rendered at a given size, kept on disk between runs so they
+ * don't have to be decoded from the contacts provider again. A contact without picture has an
+ * empty file, so it isn't looked up again either. Once the cache is full, the least recently used
+ * files are deleted.
+ *
+ * <p>Keys are made of the contact id and last update, an updated contact gets new files and the
+ * old ones are evicted eventually. Every method does disk I/O, none can be called from the UI
+ * thread.
+ */
+class AvatarDiskCache {
+    // To increase when the rendering changes, the files of the other versions are deleted
+    private static final int VERSION = 1;
+    private static final long MAX_SIZE = 8 * 1024 * 1024; // bytes
+    // Even empty files use a block
+    private static final long MIN_FILE_SIZE = 4096; // bytes
+    private static final String EXTENSION = ".png";
+
+    private final File mRoot;
+    private final File mDirectory;
+    // Only accessed with the lock held, -1 until the directory has been scanned
+    private long mSize = -1;
+
+    AvatarDiskCache(Context context) {
+        mRoot = new File(context.getCacheDir(), "avatars");
+        mDirectory = new File(mRoot, "v" + VERSION);
+    }
+
+    /** @return whether the picture, or the absence of picture, of this key is in cache */
+    boolean contains(String key) {
+        return fileOf(key).exists();
+    }
+
+    /** @return the picture of this key, or null if it isn't in cache or there is none */
+    Bitmap get(String key) {
+        File file = fileOf(key);
+        if (file.length() == 0) return null;
+
+        Bitmap bm = BitmapFactory.decodeFile(file.getPath());
+        if (bm == null) {
+            Log.w("[Avatar Disk Cache] Can't decode ", file, ", removing it");
+            remove(file);
+        } else {
+            // Last modification is used as last access for the eviction
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return bm;
+    }
+
+    /** @param bm the picture of this key, or null if there is none */
+    void put(String key, Bitmap bm) {
+        initialize();
+
+        File file = fileOf(key);
+        File tmp = null;
+        try {
+            // Another thread may be writing the same key
+            tmp = File.createTempFile(key, ".tmp", mDirectory);
+            FileOutputStream fos = new FileOutputStream(tmp);
+            try {
+                if (bm != null) {
+                    bm.compress(Bitmap.CompressFormat.PNG, 100, fos);
+                }
+            } finally {
+                fos.close();
+            }
+
+            synchronized (this) {
+                long replaced = file.exists() ? sizeOf(file) : 0;
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("can't rename " + tmp + " to " + file);
+                }
+                mSize += sizeOf(file) - replaced;
+                if (mSize > MAX_SIZE) {
+                    trim();
+                }
+            }
+        } catch (IOException ioe) {
+            Log.e("[Avatar Disk Cache] Can't write ", key, ": ", ioe);
+            if (tmp != null) tmp.delete();
+        }
+    }
+
+    /** Removes the files whose key starts with prefix. */
+    void removeAll(String prefix) {
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.getName().startsWith(prefix)) {
+                remove(file);
+            }
+        }
+    }
+
+    private File fileOf(String key) {
+        return new File(mDirectory, key + EXTENSION);
+    }
+
+    private void remove(File file) {
+        long size = sizeOf(file);
+        if (file.delete()) {
+            synchronized (this) {
+                if (mSize >= 0) mSize -= size;
+            }
+        }
+    }
+
+    private synchronized void initialize() {
+        if (mSize >= 0) return;
+
+        File[] versions = mRoot.listFiles();
+        if (versions != null) {
+            for (File version : versions) {
+                if (!version.equals(mDirectory)) {
+                    deleteRecursively(version);
+                }
+            }
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.e("[Avatar Disk Cache] Can't create ", mDirectory);
+        }
+
+        mSize = 0;
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                mSize += sizeOf(file);
+            }
+        }
+        Log.i(
+                "[Avatar Disk Cache] ",
+                files != null ? files.length : 0,
+                " files, ",
+                mSize,
+                " bytes");
+    }
+
+    /** Deletes the least recently used files until the cache is 3/4 full. */
+    private synchronized void trim() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+
+        final long[] lastModified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(
+                order,
+                new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a, Integer b) {
+                        return Long.compare(lastModified[a], lastModified[b]);
+                    }
+                });
+
+        int removed = 0;
+        for (int i = 0; i < order.length && mSize > MAX_SIZE * 3 / 4; i++) {
+            File file = files[order[i]];
+            long size = sizeOf(file);
+            if (file.delete()) {
+                mSize -= size;
+                removed++;
+            }
+        }
+        Log.i("[Avatar Disk Cache] ", removed, " files evicted, ", mSize, " bytes left");
+    }
+
+    private static long sizeOf(File file) {
+        return Math.max(file.length(), MIN_FILE_SIZE);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone.contacts.views;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.LruCache;
+import android.widget.ImageView;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.linphone.contacts.LinphoneContact;
+import org.linphone.utils.ImageUtils;
+import org.linphone.utils.LazyLog;
+
+/**
+ * Loads contacts pictures in the background, already round and at one of a few standard sizes, the
+ * smallest at least as large as the view displaying them. The most recently used ones are kept in
+ * memory, and all of them in {@link AvatarDiskCache} so they aren't decoded from the contacts
+ * provider again on the next runs. A view only displays the picture it last asked for: loading
+ * another one, or nothing, cancels the previous request.
+ *
+ * <p>Must be used from the UI thread, except {@link #getRoundPicture(Context, LinphoneContact,
+ * int)}, {@link #getCachedRoundPicture(Context, LinphoneContact, int)}, {@link
+ * #execute(Runnable)} and {@link #invalidate(String)}.
+ */
+public class AvatarLoader {
+    private static final int[] SIZES = {48, 96, 192, 384}; // px
+    private static final int THREADS = 2;
+    // Pictures known to be missing, so contacts without one don't hit the disk on each bind
+    private static final int MISSING_CACHE_SIZE = 512;
+
+    interface Listener {
+        void onAvatarLoaded(Bitmap bm);
+    }
+
+    private static final LruCache<String, Bitmap> sCache =
+            new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / 1024 / 8)) {
+                @Override
+                protected int sizeOf(String key, Bitmap bm) {
+                    return bm.getByteCount() / 1024;
+                }
+            };
+    private static final LruCache<String, Boolean> sMissing = new LruCache<>(MISSING_CACHE_SIZE);
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+    private static final Map<ImageView, Request> sRequests = new WeakHashMap<>();
+    private static final Map<LinphoneContact, ContactKeys> sKeys = new WeakHashMap<>();
+    private static ExecutorService sExecutor;
+    private static AvatarDiskCache sDiskCache;
+
+    /** @return the picture if it is in memory, null otherwise */
+    static Bitmap getCached(LinphoneContact contact, int size) {
+        String key = keyOf(contact, size);
+        return key != null ? sCache.get(key) : null;
+    }
+
+    /** @return whether the contact is known to have no picture */
+    static boolean isMissing(LinphoneContact contact, int size) {
+        String key = keyOf(contact, size);
+        return key == null || sMissing.get(key) != null;
+    }
+
+    /** The listener is only called if the picture exists and the view still wants it. */
+    static void load(ImageView view, LinphoneContact contact, int size, Listener listener) {
+        String key = keyOf(contact, size);
+        Request previous = sRequests.get(view);
+        if (previous != null) {
+            if (previous.key.equals(key)) {
+                previous.listener = listener;
+                return;
+            }
+            previous.cancel();
+        }
+
+        Request request = new Request(view, contact.getThumbnailUri(), key);
+        request.listener = listener;
+        sRequests.put(view, request);
+        request.future = getExecutor().submit(request);
+    }
+
+    /** The view won't display the picture it was waiting for, if any. */
+    static void cancel(ImageView view) {
+        Request request = sRequests.remove(view);
+        if (request != null) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Loads the picture synchronously, for shortcuts built from {@link #execute(Runnable)}. Must
+     * not be called from the UI thread if it may not be in memory, see {@link
+     * #getCachedRoundPicture(Context, LinphoneContact, int)}.
+     *
+     * @return the round picture of the contact, or null if it has none
+     */
+    public static Bitmap getRoundPicture(Context context, LinphoneContact contact, int size) {
+        String key = keyOf(contact, size);
+        if (key == null) return null;
+        return load(context.getApplicationContext(), contact.getThumbnailUri(), key);
+    }
+
+    /**
+     * For notifications, only returns the picture if it is in memory. Otherwise it is loaded in
+     * the background, so the next call finds it.
+     *
+     * @return the round picture of the contact, or null if it has none or isn't loaded yet
+     */
+    public static Bitmap getCachedRoundPicture(Context context, LinphoneContact contact, int size) {
+        final String key = keyOf(contact, size);
+        if (key == null) return null;
+
+        Bitmap bm = sCache.get(key);
+        if (bm == null && sMissing.get(key) == null) {
+            final Context appContext = context.getApplicationContext();
+            final Uri uri = contact.getThumbnailUri();
+            getExecutor()
+                    .execute(
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    load(appContext, uri, key);
+                                }
+                            });
+        }
+        return bm;
+    }
+
+    /** Runs the task on the threads loading the pictures, for work that needs many of them. */
+    public static void execute(Runnable task) {
+        getExecutor().execute(task);
+    }
+
+    /** Forgets the pictures of this contact, for instance because a new one was set. */
+    public static void invalidate(String contactId) {
+        if (contactId == null) return;
+        String prefix = contactId + "_";
+        for (String key : sCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) sCache.remove(key);
+        }
+        for (String key : sMissing.snapshot().keySet()) {
+            if (key.startsWith(prefix)) sMissing.remove(key);
+        }
+        AvatarDiskCache diskCache = sDiskCache;
+        if (diskCache != null) {
+            diskCache.removeAll(prefix);
+        }
+    }
+
+    /** @return contact id, picture version and size, or null if the contact can't have one */
+    private static String keyOf(LinphoneContact contact, int size) {
+        if (contact == null || contact.getThumbnailUri() == null) return null;
+        String id = contact.getContactId();
+        if (id == null) return null;
+        long photoId = contact.getPhotoId();
+        long photoFileId = contact.getPhotoFileId();
+        int index = standardSizeIndex(size);
+
+        // Kept per contact so binding it again doesn't build the same strings
+        synchronized (sKeys) {
+            ContactKeys keys = sKeys.get(contact);
+            if (keys == null
+                    || keys.photoId != photoId
+                    || keys.photoFileId != photoFileId
+                    || !keys.id.equals(id)) {
+                keys = new ContactKeys(id, photoId, photoFileId);
+                sKeys.put(contact, keys);
+            }
+            if (keys.keys[index] == null) {
+                keys.keys[index] = id + "_" + photoId + "." + photoFileId + "_" + SIZES[index];
+            }
+            return keys.keys[index];
+        }
+    }
+
+    private static int standardSizeIndex(int size) {
+        for (int i = 0; i < SIZES.length; i++) {
+            if (SIZES[i] >= size) return i;
+        }
+        return SIZES.length - 1;
+    }
+
+    private static int sizeOf(String key) {
+        return Integer.parseInt(key.substring(key.lastIndexOf('_') + 1));
+    }
+
+    private static Bitmap load(Context context, Uri uri, String key) {
+        Bitmap bm = sCache.get(key);
+        if (bm != null || sMissing.get(key) != null) return bm;
+
+        long start = SystemClock.uptimeMillis();
+        AvatarDiskCache diskCache = getDiskCache(context);
+        if (diskCache.contains(key)) {
+            bm = diskCache.get(key);
+            LazyLog.d(
+                    "[Avatar Loader] ", key, " read in ", SystemClock.uptimeMillis() - start, "ms");
+        } else {
+            bm = ImageUtils.getRoundBitmapFromUri(context, uri, sizeOf(key));
+            diskCache.put(key, bm);
+            LazyLog.d(
+                    "[Avatar Loader] ",
+                    key,
+                    " decoded in ",
+                    SystemClock.uptimeMillis() - start,
+                    "ms");
+        }
+
+        if (bm != null) {
+            sCache.put(key, bm);
+        } else {
+            sMissing.put(key, Boolean.TRUE);
+        }
+        return bm;
+    }
+
+    private static synchronized AvatarDiskCache getDiskCache(Context context) {
+        if (sDiskCache == null) {
+            sDiskCache = new AvatarDiskCache(context);
+        }
+        return sDiskCache;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor =
+                    Executors.newFixedThreadPool(
+                            THREADS,
+                            new ThreadFactory() {
+                                @Override
+                                public Thread newThread(Runnable r) {
+                                    Thread thread = new Thread(r, "Avatar loader");
+                                    thread.setPriority(Thread.MIN_PRIORITY);
+                                    return thread;
+                                }
+                            });
+        }
+        return sExecutor;
+    }
+
+    /** Cache keys of the pictures of a contact, for each standard size. */
+    private static class ContactKeys {
+        final String id;
+        final long photoId;
+        final long photoFileId;
+        final String[] keys = new String[SIZES.length];
+
+        ContactKeys(String id, long photoId, long photoFileId) {
+            this.id = id;
+            this.photoId = photoId;
+            this.photoFileId = photoFileId;
+        }
+    }
+
+    private static class Request implements Runnable {
+        final WeakReference<ImageView> view;
+        final Context context;
+        final Uri uri;
+        final String key;
+        // Only used on the UI thread
+        Listener listener;
+        Future<?> future;
+        volatile boolean cancelled;
+
+        Request(ImageView view, Uri uri, String key) {
+            this.view = new WeakReference<>(view);
+            this.context = view.getContext().getApplicationContext();
+            this.uri = uri;
+            this.key = key;
+        }
+
+        void cancel() {
+            cancelled = true;
+            listener = null;
+            if (future != null) future.cancel(false);
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) return;
+            final Bitmap bm = load(context, uri, key);
+
+            sHandler.post(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            if (cancelled) return;
+                            ImageView view = Request.this.view.get();
+                            if (view != null && sRequests.get(view) == Request.this) {
+                                sRequests.remove(view);
+                            }
+                            if (bm != null && listener != null) {
+                                listener.onAvatarLoaded(bm);
+                            }
+                        }
+                    });
+        }
+    }
+}
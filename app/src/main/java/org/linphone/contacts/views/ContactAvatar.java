@@ -20,15 +20,30 @@
 package org.linphone.contacts.views;
 
 import android.graphics.Bitmap;
+import android.text.TextUtils;
+import android.util.LruCache;
 import android.view.View;
+import android.widget.ImageView;
 import org.linphone.R;
 import org.linphone.contacts.LinphoneContact;
 import org.linphone.core.ChatRoomSecurityLevel;
 import org.linphone.utils.ImageUtils;
 
+/**
+ * Binds contacts avatars. Views are looked up once per avatar layout and kept in its tags, and
+ * initials are only computed once per name, so binding a list row allocates nothing once its
+ * picture is loaded.
+ */
 public class ContactAvatar {
+    private static final int DEFAULT_PICTURE_SIZE = 35; // dp
+    private static final int INITIALS_CACHE_SIZE = 512;
+
+    private static final LruCache<String, String> sInitials = new LruCache<>(INITIALS_CACHE_SIZE);
 
     private static String generateAvatar(String displayName) {
+        String initials = sInitials.get(displayName);
+        if (initials != null) return initials;
+
         String[] names = displayName.split(" ");
         StringBuilder generatedAvatarText = new StringBuilder();
         int count = 0;
@@ -38,11 +53,19 @@ public class ContactAvatar {
                 count += 1;
             }
         }
-        return generatedAvatarText.toString().toUpperCase();
+        initials = generatedAvatarText.toString().toUpperCase();
+        sInitials.put(displayName, initials);
+        return initials;
     }
 
-    private static void setSecurityLevel(ChatRoomSecurityLevel level, View v) {
-        ContactAvatarHolder holder = new ContactAvatarHolder(v);
+    private static void setInitials(ContactAvatarHolder holder, String initials) {
+        // Setting the same text again would still layout it
+        if (!TextUtils.equals(holder.generatedAvatar.getText(), initials)) {
+            holder.generatedAvatar.setText(initials);
+        }
+    }
+
+    private static void setSecurityLevel(ChatRoomSecurityLevel level, ContactAvatarHolder holder) {
         if (holder.securityLevel != null) {
             holder.securityLevel.setVisibility(View.VISIBLE);
             switch (level) {
@@ -63,8 +86,7 @@ public class ContactAvatar {
         }
     }
 
-    private static void showHasLimeX3dhCapability(View v) {
-        ContactAvatarHolder holder = new ContactAvatarHolder(v);
+    private static void showHasLimeX3dhCapability(ContactAvatarHolder holder) {
         if (holder.securityLevel != null) {
             holder.securityLevel.setVisibility(View.VISIBLE);
             holder.securityLevel.setImageResource(R.drawable.security_toogle_icon_green);
@@ -75,13 +97,16 @@ public class ContactAvatar {
 
     public static void displayAvatar(String displayName, View v, boolean showBorder) {
         if (displayName == null || v == null) return;
+        displayAvatar(displayName, ContactAvatarHolder.from(v), showBorder);
+    }
 
-        ContactAvatarHolder holder = new ContactAvatarHolder(v);
+    private static void displayAvatar(
+            String displayName, ContactAvatarHolder holder, boolean showBorder) {
         holder.init();
+        AvatarLoader.cancel(holder.contactPicture);
+        holder.contactPicture.setImageResource(R.drawable.avatar);
 
-        boolean generated_avatars =
-                v.getContext().getResources().getBoolean(R.bool.generate_text_avatar);
-        if (displayName.startsWith("+") || !generated_avatars) {
+        if (displayName.startsWith("+") || !holder.generatedAvatars) {
             // If display name is a phone number, use default avatar because generated one will be
             // +...
             holder.generatedAvatar.setVisibility(View.GONE);
@@ -89,7 +114,7 @@ public class ContactAvatar {
         } else {
             String generatedAvatar = generateAvatar(displayName);
             if (generatedAvatar != null && generatedAvatar.length() > 0) {
-                holder.generatedAvatar.setText(generatedAvatar);
+                setInitials(holder, generatedAvatar);
                 holder.generatedAvatar.setVisibility(View.VISIBLE);
                 holder.generatedAvatarBackground.setVisibility(View.VISIBLE);
             } else {
@@ -110,21 +135,24 @@ public class ContactAvatar {
 
     public static void displayAvatar(
             String displayName, ChatRoomSecurityLevel securityLevel, View v) {
-        displayAvatar(displayName, v);
-        setSecurityLevel(securityLevel, v);
+        if (displayName == null || v == null) return;
+        ContactAvatarHolder holder = ContactAvatarHolder.from(v);
+        displayAvatar(displayName, holder, false);
+        setSecurityLevel(securityLevel, holder);
     }
 
     public static void displayAvatar(LinphoneContact contact, View v, boolean showBorder) {
         if (contact == null || v == null) return;
+        displayAvatar(contact, ContactAvatarHolder.from(v), showBorder);
+    }
 
-        ContactAvatarHolder holder = new ContactAvatarHolder(v);
+    private static void displayAvatar(
+            LinphoneContact contact, ContactAvatarHolder holder, boolean showBorder) {
         holder.init();
 
-        boolean generated_avatars =
-                v.getContext().getResources().getBoolean(R.bool.generate_text_avatar);
-
         // Kepp the generated avatar ready in case of failure while loading picture
-        holder.generatedAvatar.setText(
+        setInitials(
+                holder,
                 generateAvatar(
                         contact.getFullName() == null
                                 ? contact.getFirstName() + " " + contact.getLastName()
@@ -135,12 +163,24 @@ public class ContactAvatar {
         holder.contactPicture.setVisibility(View.VISIBLE);
         holder.securityLevel.setVisibility(View.GONE);
 
-        Bitmap bm = ImageUtils.getRoundBitmapFromUri(v.getContext(), contact.getThumbnailUri());
+        int size = getPictureSize(holder.contactPicture);
+        Bitmap bm = AvatarLoader.getCached(contact, size);
         if (bm != null) {
+            AvatarLoader.cancel(holder.contactPicture);
             displayAvatar(bm, holder);
-        } else if (generated_avatars) {
-            holder.generatedAvatar.setVisibility(View.VISIBLE);
-            holder.generatedAvatarBackground.setVisibility(View.VISIBLE);
+        } else {
+            // Displayed until the picture is loaded, and if there is none
+            holder.contactPicture.setImageResource(R.drawable.avatar);
+            if (holder.generatedAvatars) {
+                holder.generatedAvatar.setVisibility(View.VISIBLE);
+                holder.generatedAvatarBackground.setVisibility(View.VISIBLE);
+            }
+
+            if (AvatarLoader.isMissing(contact, size)) {
+                AvatarLoader.cancel(holder.contactPicture);
+            } else {
+                AvatarLoader.load(holder.contactPicture, contact, size, holder);
+            }
         }
 
         if (showBorder) {
@@ -148,7 +188,19 @@ public class ContactAvatar {
         }
     }
 
-    private static void displayAvatar(Bitmap bm, ContactAvatarHolder holder) {
+    /** Size of the views displaying the picture, before they are laid out too. */
+    private static int getPictureSize(ImageView v) {
+        int size = Math.max(v.getWidth(), v.getHeight());
+        if (size <= 0 && v.getLayoutParams() != null) {
+            size = Math.max(v.getLayoutParams().width, v.getLayoutParams().height);
+        }
+        if (size <= 0) {
+            size = (int) ImageUtils.dpToPixels(v.getContext(), DEFAULT_PICTURE_SIZE);
+        }
+        return size;
+    }
+
+    static void displayAvatar(Bitmap bm, ContactAvatarHolder holder) {
         holder.contactPicture.setImageBitmap(bm);
         holder.contactPicture.setVisibility(View.VISIBLE);
         holder.generatedAvatar.setVisibility(View.GONE);
@@ -158,8 +210,9 @@ public class ContactAvatar {
     public static void displayAvatar(Bitmap bm, View v) {
         if (bm == null || v == null) return;
 
-        ContactAvatarHolder holder = new ContactAvatarHolder(v);
+        ContactAvatarHolder holder = ContactAvatarHolder.from(v);
         holder.init();
+        AvatarLoader.cancel(holder.contactPicture);
 
         holder.generatedAvatar.setVisibility(View.GONE);
         holder.generatedAvatarBackground.setVisibility(View.GONE);
@@ -175,20 +228,28 @@ public class ContactAvatar {
 
     public static void displayAvatar(
             LinphoneContact contact, boolean hasLimeX3dhCapability, View v) {
-        displayAvatar(contact, v);
+        if (contact == null || v == null) return;
+        ContactAvatarHolder holder = ContactAvatarHolder.from(v);
+        displayAvatar(contact, holder, false);
         if (hasLimeX3dhCapability) {
-            showHasLimeX3dhCapability(v);
+            showHasLimeX3dhCapability(holder);
         }
     }
 
     public static void displayAvatar(
             LinphoneContact contact, ChatRoomSecurityLevel securityLevel, View v) {
-        displayAvatar(contact, v);
-        setSecurityLevel(securityLevel, v);
+        if (contact == null || v == null) return;
+        ContactAvatarHolder holder = ContactAvatarHolder.from(v);
+        displayAvatar(contact, holder, false);
+        setSecurityLevel(securityLevel, holder);
     }
 
     public static void displayGroupChatAvatar(View v) {
-        ContactAvatarHolder holder = new ContactAvatarHolder(v);
+        displayGroupChatAvatar(ContactAvatarHolder.from(v));
+    }
+
+    private static void displayGroupChatAvatar(ContactAvatarHolder holder) {
+        AvatarLoader.cancel(holder.contactPicture);
         holder.contactPicture.setImageResource(R.drawable.chat_group_avatar);
         holder.generatedAvatar.setVisibility(View.GONE);
         holder.generatedAvatarBackground.setVisibility(View.GONE);
@@ -197,7 +258,8 @@ public class ContactAvatar {
     }
 
     public static void displayGroupChatAvatar(ChatRoomSecurityLevel level, View v) {
-        displayGroupChatAvatar(v);
-        setSecurityLevel(level, v);
+        ContactAvatarHolder holder = ContactAvatarHolder.from(v);
+        displayGroupChatAvatar(holder);
+        setSecurityLevel(level, holder);
     }
 }
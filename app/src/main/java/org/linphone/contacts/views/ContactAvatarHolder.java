@@ -19,24 +19,38 @@
  */
 package org.linphone.contacts.views;
 
+import android.graphics.Bitmap;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
 import org.linphone.R;
 
-class ContactAvatarHolder {
+/** Views of an avatar layout, looked up once and kept in its tags. */
+class ContactAvatarHolder implements AvatarLoader.Listener {
     public final ImageView contactPicture;
     public final ImageView avatarBorder;
     public final ImageView securityLevel;
     public final TextView generatedAvatar;
     public final ImageView generatedAvatarBackground;
+    public final boolean generatedAvatars;
 
-    public ContactAvatarHolder(View v) {
+    private ContactAvatarHolder(View v) {
         contactPicture = v.findViewById(R.id.contact_picture);
         securityLevel = v.findViewById(R.id.security_level);
         generatedAvatar = v.findViewById(R.id.generated_avatar);
         generatedAvatarBackground = v.findViewById(R.id.generated_avatar_background);
         avatarBorder = v.findViewById(R.id.border);
+        generatedAvatars = v.getContext().getResources().getBoolean(R.bool.generate_text_avatar);
+    }
+
+    static ContactAvatarHolder from(View v) {
+        Object tag = v.getTag(R.id.avatar_layout);
+        if (tag instanceof ContactAvatarHolder) {
+            return (ContactAvatarHolder) tag;
+        }
+        ContactAvatarHolder holder = new ContactAvatarHolder(v);
+        v.setTag(R.id.avatar_layout, holder);
+        return holder;
     }
 
     public void init() {
@@ -46,4 +60,9 @@ class ContactAvatarHolder {
         securityLevel.setVisibility(View.GONE);
         avatarBorder.setVisibility(View.GONE);
     }
+
+    @Override
+    public void onAvatarLoaded(Bitmap bm) {
+        ContactAvatar.displayAvatar(bm, this);
+    }
 }
@@ -27,6 +27,7 @@ import org.linphone.core.Core;
 import org.linphone.core.tools.Log;
 import org.linphone.settings.LinphonePreferences;
 import org.linphone.utils.LinphoneUtils;
+import org.linphone.utils.PushNotificationUtils;
 
 public class FirebaseMessaging extends FirebaseMessagingService {
     private Runnable mPushReceivedRunnable =
@@ -36,6 +37,8 @@ public class FirebaseMessaging extends FirebaseMessagingService {
                     if (!LinphoneContext.isReady()) {
                         android.util.Log.i(
                                 "FirebaseMessaging", "[Push Notification] Starting context");
+                        // Only what is needed to register and ring is started right away, the
+                        // rest waits for the call to be handled
                         new LinphoneContext(getApplicationContext());
                         LinphoneContext.instance().start(true);
                     } else {
@@ -43,6 +46,8 @@ public class FirebaseMessaging extends FirebaseMessagingService {
                         if (LinphoneManager.getInstance() != null) {
                             Core core = LinphoneManager.getCore();
                             if (core != null) {
+                                // A call or a message is about to be received
+                                LinphoneManager.getCoreIterator().onNetworkActivity();
                                 core.ensureRegistered();
                             }
                         }
@@ -68,6 +73,7 @@ public class FirebaseMessaging extends FirebaseMessagingService {
     @Override
     public void onMessageReceived(RemoteMessage remoteMessage) {
         android.util.Log.i("FirebaseMessaging", "[Push Notification] Received");
+        PushNotificationUtils.onPushReceived();
         LinphoneUtils.dispatchOnUIThread(mPushReceivedRunnable);
     }
 }
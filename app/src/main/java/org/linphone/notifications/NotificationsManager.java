@@ -32,6 +32,8 @@ import android.net.Uri;
 import android.service.notification.StatusBarNotification;
 import java.io.File;
 import java.util.HashMap;
+import org.linphone.CoreEventBus;
+import org.linphone.LinphoneContext;
 import org.linphone.LinphoneManager;
 import org.linphone.R;
 import org.linphone.call.CallActivity;
@@ -41,6 +43,7 @@ import org.linphone.chat.ChatActivity;
 import org.linphone.compatibility.Compatibility;
 import org.linphone.contacts.ContactsManager;
 import org.linphone.contacts.LinphoneContact;
+import org.linphone.contacts.views.AvatarLoader;
 import org.linphone.core.Address;
 import org.linphone.core.Call;
 import org.linphone.core.ChatMessage;
@@ -58,7 +61,6 @@ import org.linphone.service.LinphoneService;
 import org.linphone.settings.LinphonePreferences;
 import org.linphone.utils.DeviceUtils;
 import org.linphone.utils.FileUtils;
-import org.linphone.utils.ImageUtils;
 import org.linphone.utils.LinphoneUtils;
 import org.linphone.utils.MediaScannerListener;
 
@@ -75,9 +77,10 @@ public class NotificationsManager {
     private int mCurrentForegroundServiceNotification;
     private String mCurrentChatRoomAddress;
     private CoreListenerStub mListener;
+    private CoreEventBus.ChangesListener mChangesListener;
     private ChatMessageListenerStub mMessageListener;
 
-    public NotificationsManager(Context context) {
+    public NotificationsManager(Context context, Bitmap launcherIcon) {
         mContext = context;
         mChatNotifMap = new HashMap<>();
         mCallNotifMap = new HashMap<>();
@@ -103,13 +106,6 @@ public class NotificationsManager {
 
         Compatibility.createNotificationChannels(mContext);
 
-        Bitmap bm = null;
-        try {
-            bm = BitmapFactory.decodeResource(mContext.getResources(), R.mipmap.ic_launcher);
-        } catch (Exception e) {
-            Log.e(e);
-        }
-
         Intent notifIntent = new Intent(mContext, DialerActivity.class);
         notifIntent.putExtra("Notification", true);
         addFlagsToIntent(notifIntent);
@@ -124,20 +120,13 @@ public class NotificationsManager {
                         "",
                         R.drawable.linphone_notification_icon,
                         R.mipmap.ic_launcher,
-                        bm,
+                        launcherIcon,
                         pendingIntent,
                         Notification.PRIORITY_MIN,
                         true);
 
         mListener =
                 new CoreListenerStub() {
-                    @Override
-                    public void onMessageSent(Core core, ChatRoom room, ChatMessage message) {
-                        if (room.hasCapability(ChatRoomCapabilities.OneToOne.toInt())) {
-                            Compatibility.createChatShortcuts(mContext);
-                        }
-                    }
-
                     @Override
                     public void onMessageReceived(
                             Core core, final ChatRoom cr, final ChatMessage message) {
@@ -210,9 +199,21 @@ public class NotificationsManager {
                             createNotification(
                                     cr, contact, from, textMessage, message.getTime(), null, null);
                         }
+                    }
+                };
+
+        mChangesListener =
+                new CoreEventBus.ChangesListener() {
+                    @Override
+                    public void onChanges(CoreEventBus.ChangeSet changes) {
+                        if (mContext.getResources().getBoolean(R.bool.disable_chat)) return;
 
-                        if (cr.hasCapability(ChatRoomCapabilities.OneToOne.toInt())) {
-                            Compatibility.createChatShortcuts(mContext);
+                        // Rebuild the shortcuts only once for a burst of messages
+                        for (ChatRoom room : changes.getChatRoomsWithNewMessages()) {
+                            if (room.hasCapability(ChatRoomCapabilities.OneToOne.toInt())) {
+                                Compatibility.createChatShortcuts(mContext);
+                                return;
+                            }
                         }
                     }
                 };
@@ -265,11 +266,22 @@ public class NotificationsManager {
                 };
     }
 
+    /** Can be called from any thread, so it can be decoded while the Core is being created. */
+    public static Bitmap decodeLauncherIcon(Context context) {
+        try {
+            return BitmapFactory.decodeResource(context.getResources(), R.mipmap.ic_launcher);
+        } catch (Exception e) {
+            Log.e(e);
+        }
+        return null;
+    }
+
     public void onCoreReady() {
         Core core = LinphoneManager.getCore();
         if (core != null) {
             core.addListener(mListener);
         }
+        LinphoneContext.instance().getCoreEventBus().addListener(mChangesListener);
     }
 
     public void destroy() {
@@ -292,6 +304,7 @@ public class NotificationsManager {
         if (core != null) {
             core.removeListener(mListener);
         }
+        LinphoneContext.instance().getCoreEventBus().removeListener(mChangesListener);
     }
 
     private void addFlagsToIntent(Intent intent) {
@@ -438,14 +451,14 @@ public class NotificationsManager {
             String subject,
             String conferenceAddress,
             String fromName,
-            Uri fromPictureUri,
+            LinphoneContact fromContact,
             String message,
             Address localIdentity,
             long timestamp,
             Uri filePath,
             String fileMime) {
 
-        Bitmap bm = ImageUtils.getRoundBitmapFromUri(mContext, fromPictureUri);
+        Bitmap bm = getContactPicture(fromContact);
         Notifiable notif = mChatNotifMap.get(conferenceAddress);
         NotifiableMessage notifMessage =
                 new NotifiableMessage(message, fromName, timestamp, filePath, fileMime);
@@ -470,7 +483,7 @@ public class NotificationsManager {
     public void displayMessageNotification(
             String fromSipUri,
             String fromName,
-            Uri fromPictureUri,
+            LinphoneContact fromContact,
             String message,
             Address localIdentity,
             long timestamp,
@@ -480,7 +493,7 @@ public class NotificationsManager {
             fromName = fromSipUri;
         }
 
-        Bitmap bm = ImageUtils.getRoundBitmapFromUri(mContext, fromPictureUri);
+        Bitmap bm = getContactPicture(fromContact);
         Notifiable notif = mChatNotifMap.get(fromSipUri);
         NotifiableMessage notifMessage =
                 new NotifiableMessage(message, fromName, timestamp, filePath, fileMime);
@@ -634,8 +647,7 @@ public class NotificationsManager {
                         + callNotifIntentClass);
 
         LinphoneContact contact = ContactsManager.getInstance().findContactFromAddress(address);
-        Uri pictureUri = contact != null ? contact.getThumbnailUri() : null;
-        Bitmap bm = ImageUtils.getRoundBitmapFromUri(mContext, pictureUri);
+        Bitmap bm = getContactPicture(contact);
         String name =
                 contact != null
                         ? contact.getFullName()
@@ -690,6 +702,14 @@ public class NotificationsManager {
         }
     }
 
+    /** Called from Core callbacks, so only from memory, the next notifications will have it. */
+    private Bitmap getContactPicture(LinphoneContact contact) {
+        int size =
+                mContext.getResources()
+                        .getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+        return AvatarLoader.getCachedRoundPicture(mContext, contact, size);
+    }
+
     public String getSipUriForCallNotificationId(int notificationId) {
         for (String addr : mCallNotifMap.keySet()) {
             if (mCallNotifMap.get(addr).getNotificationId() == notificationId) {
@@ -712,7 +732,7 @@ public class NotificationsManager {
                 displayMessageNotification(
                         cr.getPeerAddress().asStringUriOnly(),
                         contact.getFullName(),
-                        contact.getThumbnailUri(),
+                        contact,
                         textMessage,
                         cr.getLocalAddress(),
                         time,
@@ -736,7 +756,7 @@ public class NotificationsManager {
                         subject,
                         cr.getPeerAddress().asStringUriOnly(),
                         contact.getFullName(),
-                        contact.getThumbnailUri(),
+                        contact,
                         textMessage,
                         cr.getLocalAddress(),
                         time,
@@ -82,6 +82,11 @@ public class ActivityMonitor implements Application.ActivityLifecycleCallbacks {
         activities.remove(activity);
     }
 
+    /** Whether at least one of our activities is currently resumed. */
+    public synchronized boolean hasRunningActivities() {
+        return mRunningActivities > 0;
+    }
+
     void startInactivityChecker() {
         if (mLastChecker != null) mLastChecker.cancel();
         LinphoneUtils.dispatchOnUIThreadAfter((mLastChecker = new InactivityChecker()), 2000);
@@ -106,6 +111,7 @@ public class ActivityMonitor implements Application.ActivityLifecycleCallbacks {
         Log.i("[Activity Monitor] App has entered background mode");
         if (LinphoneManager.getCore() != null) {
             LinphoneManager.getCore().enterBackground();
+            LinphoneManager.getCoreIterator().setForeground(false);
         }
     }
 
@@ -113,6 +119,7 @@ public class ActivityMonitor implements Application.ActivityLifecycleCallbacks {
         Log.i("[Activity Monitor] App has left background mode");
         if (LinphoneManager.getCore() != null) {
             LinphoneManager.getCore().enterForeground();
+            LinphoneManager.getCoreIterator().setForeground(true);
         }
     }
 
@@ -19,11 +19,13 @@
  */
 package org.linphone.service;
 
-import android.app.Application;
 import android.app.Service;
 import android.content.Intent;
 import android.os.IBinder;
+import android.os.Process;
+import android.os.SystemClock;
 import android.view.WindowManager;
+import java.util.ArrayList;
 import org.linphone.LinphoneContext;
 import org.linphone.LinphoneManager;
 import org.linphone.R;
@@ -38,10 +40,13 @@ import org.linphone.settings.LinphonePreferences;
 
 public final class LinphoneService extends Service {
     private static LinphoneService sInstance;
+    private static final ArrayList<ServiceReadyListener> sReadyListeners = new ArrayList<>();
+    private static long sReadyRequestTime;
+    private static long sReadyDelay = -1;
 
     private LinphoneOverlay mOverlay;
     private WindowManager mWindowManager;
-    private Application.ActivityLifecycleCallbacks mActivityCallbacks;
+    private ActivityMonitor mActivityCallbacks;
     private boolean misLinphoneContextOwned;
 
     @SuppressWarnings("unchecked")
@@ -93,6 +98,7 @@ public final class LinphoneService extends Service {
         }
 
         Log.i("[Service] Started");
+        notifyReadyListeners();
         return START_STICKY;
     }
 
@@ -130,6 +136,8 @@ public final class LinphoneService extends Service {
 
         LinphoneContext.instance().destroy();
         sInstance = null;
+        sReadyListeners.clear();
+        sReadyRequestTime = 0;
 
         super.onDestroy();
     }
@@ -149,6 +157,58 @@ public final class LinphoneService extends Service {
         throw new RuntimeException("LinphoneService not instantiated yet");
     }
 
+    /**
+     * Calls the listener as soon as the service is started, right away if it already is. Must be
+     * called from the UI thread, the listener will be called on it too.
+     */
+    public static void addReadyListener(ServiceReadyListener listener) {
+        if (isReady()) {
+            listener.onServiceReady();
+            return;
+        }
+
+        if (sReadyRequestTime == 0) {
+            sReadyRequestTime = SystemClock.uptimeMillis();
+        }
+        if (!sReadyListeners.contains(listener)) {
+            sReadyListeners.add(listener);
+        }
+    }
+
+    public static void removeReadyListener(ServiceReadyListener listener) {
+        sReadyListeners.remove(listener);
+    }
+
+    /** Time between the first wait for the service and the moment it was ready, -1 if unknown. */
+    public static long getReadyDelay() {
+        return sReadyDelay;
+    }
+
+    private static void notifyReadyListeners() {
+        long now = SystemClock.uptimeMillis();
+        if (sReadyRequestTime > 0) {
+            sReadyDelay = now - sReadyRequestTime;
+            Log.i("[Service] Ready " + sReadyDelay + "ms after it was requested");
+        }
+        if (Version.sdkAboveOrEqual(Version.API24_NOUGAT_70)) {
+            long sinceProcessStart = now - Process.getStartUptimeMillis();
+            Log.i("[Service] Ready " + sinceProcessStart + "ms after process start");
+        }
+
+        // Copy the list in case a listener registers or removes itself
+        ArrayList<ServiceReadyListener> listeners = new ArrayList<>(sReadyListeners);
+        sReadyListeners.clear();
+        sReadyRequestTime = 0;
+        for (ServiceReadyListener listener : listeners) {
+            listener.onServiceReady();
+        }
+    }
+
+    /** Whether one of the application activities is visible, according to the ActivityMonitor. */
+    public boolean isInForeground() {
+        return mActivityCallbacks != null && mActivityCallbacks.hasRunningActivities();
+    }
+
     /* Managers accessors */
 
     public void createOverlay() {
@@ -19,6 +19,6 @@
  */
 package org.linphone.service;
 
-public interface ServiceWaitThreadListener {
+public interface ServiceReadyListener {
     void onServiceReady();
 }
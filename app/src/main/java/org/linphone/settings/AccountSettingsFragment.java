@@ -31,6 +31,7 @@ import java.util.List;
 import org.linphone.LinphoneManager;
 import org.linphone.R;
 import org.linphone.assistant.PhoneAccountLinkingAssistantActivity;
+import org.linphone.contacts.ContactsManager;
 import org.linphone.core.AVPFMode;
 import org.linphone.core.Address;
 import org.linphone.core.AuthInfo;
@@ -380,6 +381,8 @@ public class AccountSettingsFragment extends SettingsFragment {
                             mProxyConfig.edit();
                             mProxyConfig.setDialPrefix(newValue);
                             mProxyConfig.done();
+                            // Don't wait for the registration to update the contacts lookup
+                            ContactsManager.getInstance().checkDialPrefix();
                         } else {
                             Log.e("[Account Settings] No proxy config !");
                         }
@@ -21,15 +21,19 @@ package org.linphone.settings;
 
 import android.Manifest;
 import android.content.Context;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import androidx.appcompat.app.AppCompatDelegate;
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Properties;
 import org.linphone.LinphoneContext;
 import org.linphone.LinphoneManager;
 import org.linphone.R;
@@ -58,6 +62,7 @@ public class LinphonePreferences {
     private static final String LINPHONE_LPCONFIG_XSD = "/lpconfig.xsd";
     private static final String DEFAULT_ASSISTANT_RC = "/default_assistant_create.rc";
     private static final String LINPHONE_ASSISTANT_RC = "/linphone_assistant_create.rc";
+    private static final String ASSETS_MANIFEST = "/assets_manifest";
 
     private static LinphonePreferences sInstance;
 
@@ -86,42 +91,147 @@ public class LinphonePreferences {
         try {
             copyAssetsFromPackage();
         } catch (IOException ioe) {
-
+            Log.e("[Preferences] Failed to copy assets from package: " + ioe);
         }
     }
 
     /* Assets stuff */
 
     private void copyAssetsFromPackage() throws IOException {
-        copyIfNotExist(R.raw.linphonerc_default, getLinphoneDefaultConfig());
-        copyFromPackage(R.raw.linphonerc_factory, new File(getLinphoneFactoryConfig()).getName());
-        copyIfNotExist(R.raw.lpconfig, mBasePath + LINPHONE_LPCONFIG_XSD);
-        copyFromPackage(
-                R.raw.default_assistant_create,
-                new File(mBasePath + DEFAULT_ASSISTANT_RC).getName());
-        copyFromPackage(
-                R.raw.linphone_assistant_create,
-                new File(mBasePath + LINPHONE_ASSISTANT_RC).getName());
-    }
-
-    private void copyIfNotExist(int ressourceId, String target) throws IOException {
+        // Files overwritten at each update are only copied again if the app has changed since
+        String stamp = getAssetsStamp();
+        Properties manifest = loadAssetsManifest();
+        boolean changed = false;
+
+        changed |= copyIfNotExist(R.raw.linphonerc_default, getLinphoneDefaultConfig());
+        changed |=
+                copyIfChanged(
+                        R.raw.linphonerc_factory, getLinphoneFactoryConfig(), manifest, stamp);
+        changed |= copyIfNotExist(R.raw.lpconfig, mBasePath + LINPHONE_LPCONFIG_XSD);
+        changed |=
+                copyIfChanged(
+                        R.raw.default_assistant_create,
+                        mBasePath + DEFAULT_ASSISTANT_RC,
+                        manifest,
+                        stamp);
+        changed |=
+                copyIfChanged(
+                        R.raw.linphone_assistant_create,
+                        mBasePath + LINPHONE_ASSISTANT_RC,
+                        manifest,
+                        stamp);
+
+        if (changed) {
+            saveAssetsManifest(manifest);
+        } else {
+            Log.i("[Preferences] Assets are up to date, nothing to copy");
+        }
+    }
+
+    private String getAssetsStamp() {
+        try {
+            PackageInfo info =
+                    mContext.getPackageManager().getPackageInfo(mContext.getPackageName(), 0);
+            return org.linphone.BuildConfig.VERSION_CODE + "-" + info.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException nnfe) {
+            Log.e("[Preferences] Can't get package info: " + nnfe);
+        }
+        return null;
+    }
+
+    private Properties loadAssetsManifest() {
+        Properties manifest = new Properties();
+        File file = new File(mBasePath + ASSETS_MANIFEST);
+        if (!file.exists()) return manifest;
+
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            manifest.load(inputStream);
+        } catch (IOException ioe) {
+            Log.e("[Preferences] Can't read assets manifest: " + ioe);
+            manifest.clear();
+        } finally {
+            closeQuietly(inputStream);
+        }
+        return manifest;
+    }
+
+    private void saveAssetsManifest(Properties manifest) throws IOException {
+        File target = new File(mBasePath + ASSETS_MANIFEST);
+        File temp = new File(target.getAbsolutePath() + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(temp);
+        try {
+            manifest.store(outputStream, null);
+            outputStream.getFD().sync();
+        } finally {
+            closeQuietly(outputStream);
+        }
+        renameAtomically(temp, target);
+    }
+
+    private boolean copyIfNotExist(int ressourceId, String target) throws IOException {
         File lFileToCopy = new File(target);
         if (!lFileToCopy.exists()) {
-            copyFromPackage(ressourceId, lFileToCopy.getName());
+            copyFromPackage(ressourceId, lFileToCopy);
+            return true;
         }
+        return false;
     }
 
-    private void copyFromPackage(int ressourceId, String target) throws IOException {
-        FileOutputStream lOutputStream = mContext.openFileOutput(target, 0);
+    private boolean copyIfChanged(int ressourceId, String target, Properties manifest, String stamp)
+            throws IOException {
+        File lFileToCopy = new File(target);
+        String name = lFileToCopy.getName();
+        if (stamp != null && lFileToCopy.exists() && stamp.equals(manifest.getProperty(name))) {
+            return false;
+        }
+
+        copyFromPackage(ressourceId, lFileToCopy);
+        if (stamp != null) {
+            manifest.setProperty(name, stamp);
+        }
+        return true;
+    }
+
+    private void copyFromPackage(int ressourceId, File target) throws IOException {
+        Log.i("[Preferences] Copying " + target.getName() + " from package");
+        // Write a temporary file first so target is never left half written
+        File temp = new File(target.getAbsolutePath() + ".tmp");
         InputStream lInputStream = mContext.getResources().openRawResource(ressourceId);
-        int readByte;
-        byte[] buff = new byte[8048];
-        while ((readByte = lInputStream.read(buff)) != -1) {
-            lOutputStream.write(buff, 0, readByte);
+        FileOutputStream lOutputStream = null;
+        try {
+            lOutputStream = new FileOutputStream(temp);
+            int readByte;
+            byte[] buff = new byte[8048];
+            while ((readByte = lInputStream.read(buff)) != -1) {
+                lOutputStream.write(buff, 0, readByte);
+            }
+            lOutputStream.flush();
+            lOutputStream.getFD().sync();
+        } finally {
+            closeQuietly(lOutputStream);
+            closeQuietly(lInputStream);
+        }
+        renameAtomically(temp, target);
+    }
+
+    private void renameAtomically(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            if (!from.delete()) {
+                Log.w("[Preferences] Can't delete " + from.getAbsolutePath());
+            }
+            throw new IOException("Can't rename " + from.getName() + " to " + to.getName());
+        }
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ioe) {
+            Log.e("[Preferences] Failed to close stream: " + ioe);
         }
-        lOutputStream.flush();
-        lOutputStream.close();
-        lInputStream.close();
     }
 
     public String getLinphoneDefaultConfig() {
@@ -826,6 +936,41 @@ public class LinphonePreferences {
         return getConfig().getBool("app", "java_logger", false);
     }
 
+    public boolean isJavaLoggerBinaryFileEnabled() {
+        if (getConfig() == null) return false;
+        return getConfig().getBool("app", "java_logger_binary_file", false);
+    }
+
+    public void enableJavaLoggerBinaryFile(boolean enable) {
+        if (getConfig() == null) return;
+        getConfig().setBool("app", "java_logger_binary_file", enable);
+    }
+
+    public boolean isAdaptiveCoreIterateEnabled() {
+        if (getConfig() == null) return true;
+        return getConfig().getBool("app", "adaptive_core_iterate", true);
+    }
+
+    public void enableAdaptiveCoreIterate(boolean enable) {
+        if (getConfig() == null) return;
+        getConfig().setBool("app", "adaptive_core_iterate", enable);
+    }
+
+    public boolean isMainThreadWatchdogEnabled() {
+        if (getConfig() == null) return false;
+        return getConfig().getBool("app", "main_thread_watchdog", false);
+    }
+
+    public void enableMainThreadWatchdog(boolean enable) {
+        if (getConfig() == null) return;
+        getConfig().setBool("app", "main_thread_watchdog", enable);
+    }
+
+    public int getMainThreadStallThreshold() {
+        if (getConfig() == null) return 200;
+        return getConfig().getInt("app", "main_thread_stall_threshold", 200);
+    }
+
     public boolean isAutoStartEnabled() {
         if (getConfig() == null) return false;
         return getConfig().getBool("app", "auto_start", false);
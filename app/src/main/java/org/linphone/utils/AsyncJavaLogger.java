@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import org.linphone.core.LogLevel;
+import org.linphone.core.LoggingService;
+import org.linphone.core.LoggingServiceListener;
+
+/**
+ * Forwards the SDK logs to android.util.Log without blocking the thread that logs. Records are
+ * stored in a fixed size ring buffer (lock free, many producers and a single consumer) and a
+ * background thread drains it in batches, joining consecutive lines of the same domain and level
+ * into a single logcat entry. The thread parks while the buffer is empty and is only woken by the
+ * record that makes it non-empty. When the buffer is full new records are dropped and counted.
+ *
+ * <p>Records can also be appended to a binary file for log collection. The file starts with the
+ * "LLOG" magic and a version byte, followed by entries starting with a tag byte: {@link
+ * #TAG_DOMAIN} (short id, UTF domain) declares a domain the first time it is used, {@link
+ * #TAG_RECORD} (long timestamp in ms, byte level, short domain id, int length, UTF-8 bytes) is a
+ * log line.
+ */
+public class AsyncJavaLogger implements LoggingServiceListener {
+    public static final byte TAG_DOMAIN = 0;
+    public static final byte TAG_RECORD = 1;
+
+    private static final byte[] BINARY_MAGIC = {'L', 'L', 'O', 'G'};
+    private static final byte BINARY_VERSION = 1;
+    private static final long BINARY_FILE_MAX_SIZE = 10 * 1024 * 1024;
+    private static final int DEFAULT_CAPACITY = 4096; // Must be a power of 2
+    // Logcat truncates entries above ~4KB
+    private static final int MAX_BATCH_LENGTH = 4000;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final int mCapacity;
+    private final int mMask;
+    private final AtomicLongArray mSequences;
+    private final String[] mDomains;
+    private final LogLevel[] mLevels;
+    private final String[] mMessages;
+    private final long[] mTimestamps;
+    private final AtomicLong mEnqueuePosition;
+    private volatile long mDequeuePosition;
+
+    private final AtomicLong mDroppedCount;
+    private final AtomicBoolean mStarted;
+    private final AtomicBoolean mWaiting;
+    private volatile boolean mRunning;
+    private volatile Thread mThread;
+    private long mReportedDroppedCount;
+
+    private volatile String mBinaryFilePath;
+    private DataOutputStream mBinaryStream;
+    private long mBinaryFileStart;
+    private long mBinaryFileSize;
+    private final HashMap<String, Integer> mBinaryDomains;
+
+    public AsyncJavaLogger() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public AsyncJavaLogger(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of 2");
+        }
+        mCapacity = capacity;
+        mMask = capacity - 1;
+        mSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            mSequences.set(i, i);
+        }
+        mDomains = new String[capacity];
+        mLevels = new LogLevel[capacity];
+        mMessages = new String[capacity];
+        mTimestamps = new long[capacity];
+        mEnqueuePosition = new AtomicLong();
+        mDroppedCount = new AtomicLong();
+        mStarted = new AtomicBoolean();
+        mWaiting = new AtomicBoolean();
+        mBinaryDomains = new HashMap<>();
+    }
+
+    /** Also writes the records to this file, or stops doing so if path is null. */
+    public void setBinaryFilePath(String path) {
+        mBinaryFilePath = path;
+    }
+
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    @Override
+    public void onLogMessageWritten(
+            LoggingService logService, String domain, LogLevel lev, String message) {
+        if (!offer(domain, lev, message)) {
+            mDroppedCount.incrementAndGet();
+        }
+        if (!mStarted.get() && mStarted.compareAndSet(false, true)) {
+            start();
+        }
+    }
+
+    /** Writes the records still in the buffer and stops the draining thread. */
+    public void stop() {
+        Thread thread = mThread;
+        if (thread == null) return;
+
+        mRunning = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(1000);
+        } catch (InterruptedException ie) {
+            android.util.Log.e("AsyncJavaLogger", "Interrupted while flushing logs");
+        }
+        mThread = null;
+        mStarted.set(false);
+    }
+
+    private void start() {
+        mRunning = true;
+        Thread thread =
+                new Thread("Linphone logs") {
+                    @Override
+                    public void run() {
+                        drainLoop();
+                    }
+                };
+        thread.setPriority(Thread.MIN_PRIORITY);
+        mThread = thread;
+        thread.start();
+    }
+
+    private boolean offer(String domain, LogLevel level, String message) {
+        long position = mEnqueuePosition.get();
+        int index;
+        while (true) {
+            index = (int) (position & mMask);
+            long difference = mSequences.get(index) - position;
+            if (difference == 0) {
+                if (mEnqueuePosition.compareAndSet(position, position + 1)) break;
+                position = mEnqueuePosition.get();
+            } else if (difference < 0) {
+                // The consumer hasn't freed this slot yet, buffer is full
+                return false;
+            } else {
+                position = mEnqueuePosition.get();
+            }
+        }
+
+        // The slot is ours until its sequence is published
+        mDomains[index] = domain;
+        mLevels[index] = level;
+        mMessages[index] = message;
+        mTimestamps[index] = System.currentTimeMillis();
+        mSequences.set(index, position + 1);
+
+        // Only the record published while the consumer waits on an empty buffer wakes it up
+        if (mWaiting.get() && mWaiting.compareAndSet(true, false)) {
+            Thread thread = mThread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+        return true;
+    }
+
+    private void drainLoop() {
+        StringBuilder batch = new StringBuilder(MAX_BATCH_LENGTH);
+        while (true) {
+            boolean running = mRunning;
+            drain(batch);
+            reportDroppedRecords();
+            if (!running) break;
+            awaitRecords();
+        }
+        closeBinaryFile();
+    }
+
+    private void awaitRecords() {
+        mWaiting.set(true);
+        // A record published before the flag was visible wouldn't have unparked us
+        if (isEmpty() && mRunning) {
+            LockSupport.park(this);
+        }
+        mWaiting.set(false);
+    }
+
+    private boolean isEmpty() {
+        long position = mDequeuePosition;
+        return mSequences.get((int) (position & mMask)) != position + 1;
+    }
+
+    private void drain(StringBuilder batch) {
+        String batchDomain = null;
+        LogLevel batchLevel = null;
+        batch.setLength(0);
+
+        long position = mDequeuePosition;
+        while (true) {
+            int index = (int) (position & mMask);
+            if (mSequences.get(index) != position + 1) break; // Empty
+
+            String domain = mDomains[index];
+            LogLevel level = mLevels[index];
+            String message = mMessages[index];
+            long timestamp = mTimestamps[index];
+            mDomains[index] = null;
+            mMessages[index] = null;
+            mSequences.set(index, position + mCapacity);
+            position += 1;
+            mDequeuePosition = position;
+
+            writeBinaryRecord(timestamp, domain, level, message);
+
+            if (batch.length() > 0
+                    && (level != batchLevel
+                            || !equals(domain, batchDomain)
+                            || batch.length() + message.length() + 1 > MAX_BATCH_LENGTH)) {
+                println(batchDomain, batchLevel, batch.toString());
+                batch.setLength(0);
+            }
+            if (batch.length() > 0) {
+                batch.append('\n');
+            }
+            batch.append(message);
+            batchDomain = domain;
+            batchLevel = level;
+        }
+
+        if (batch.length() > 0) {
+            println(batchDomain, batchLevel, batch.toString());
+        }
+        flushBinaryFile();
+    }
+
+    private void reportDroppedRecords() {
+        long dropped = mDroppedCount.get();
+        if (dropped != mReportedDroppedCount) {
+            android.util.Log.w(
+                    "AsyncJavaLogger",
+                    (dropped - mReportedDroppedCount)
+                            + " log lines dropped because the buffer was full ("
+                            + dropped
+                            + " in total)");
+            mReportedDroppedCount = dropped;
+        }
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static void println(String domain, LogLevel level, String message) {
+        switch (level) {
+            case Debug:
+                android.util.Log.d(domain, message);
+                break;
+            case Message:
+                android.util.Log.i(domain, message);
+                break;
+            case Warning:
+                android.util.Log.w(domain, message);
+                break;
+            case Error:
+                android.util.Log.e(domain, message);
+                break;
+            case Fatal:
+            default:
+                android.util.Log.wtf(domain, message);
+                break;
+        }
+    }
+
+    /* Binary file, only touched by the draining thread */
+
+    private void writeBinaryRecord(long timestamp, String domain, LogLevel level, String message) {
+        if (!openBinaryFile()) return;
+
+        try {
+            if (domain == null) domain = "";
+            Integer domainId = mBinaryDomains.get(domain);
+            if (domainId == null) {
+                domainId = mBinaryDomains.size();
+                mBinaryDomains.put(domain, domainId);
+                mBinaryStream.writeByte(TAG_DOMAIN);
+                mBinaryStream.writeShort(domainId);
+                mBinaryStream.writeUTF(domain);
+            }
+
+            byte[] bytes = message.getBytes(UTF8);
+            mBinaryStream.writeByte(TAG_RECORD);
+            mBinaryStream.writeLong(timestamp);
+            mBinaryStream.writeByte(level.toInt());
+            mBinaryStream.writeShort(domainId);
+            mBinaryStream.writeInt(bytes.length);
+            mBinaryStream.write(bytes);
+            mBinaryFileSize = mBinaryFileStart + mBinaryStream.size();
+        } catch (IOException ioe) {
+            android.util.Log.e("AsyncJavaLogger", "Can't write binary log: " + ioe);
+            closeBinaryFile();
+            mBinaryFilePath = null;
+        }
+    }
+
+    private boolean openBinaryFile() {
+        String path = mBinaryFilePath;
+        if (path == null) {
+            closeBinaryFile();
+            return false;
+        }
+        if (mBinaryStream != null && mBinaryFileSize < BINARY_FILE_MAX_SIZE) return true;
+
+        closeBinaryFile();
+        File file = new File(path);
+        if (file.length() >= BINARY_FILE_MAX_SIZE) {
+            // Keep the previous file for the log collection
+            File previous = new File(path + ".1");
+            if (!file.renameTo(previous)) {
+                android.util.Log.w("AsyncJavaLogger", "Can't rotate " + path);
+            }
+        }
+
+        try {
+            mBinaryFileStart = file.exists() ? file.length() : 0;
+            boolean isNew = mBinaryFileStart == 0;
+            mBinaryStream =
+                    new DataOutputStream(
+                            new BufferedOutputStream(new FileOutputStream(file, true), 16384));
+            // Domain ids are only valid within the file, declare them again after each reopening
+            mBinaryDomains.clear();
+            if (isNew) {
+                mBinaryStream.write(BINARY_MAGIC);
+                mBinaryStream.writeByte(BINARY_VERSION);
+            }
+            mBinaryFileSize = mBinaryFileStart + mBinaryStream.size();
+            return true;
+        } catch (IOException ioe) {
+            android.util.Log.e("AsyncJavaLogger", "Can't open binary log " + path + ": " + ioe);
+            mBinaryStream = null;
+            mBinaryFilePath = null;
+        }
+        return false;
+    }
+
+    private void flushBinaryFile() {
+        if (mBinaryStream == null) return;
+        try {
+            mBinaryStream.flush();
+        } catch (IOException ioe) {
+            android.util.Log.e("AsyncJavaLogger", "Can't flush binary log: " + ioe);
+        }
+    }
+
+    private void closeBinaryFile() {
+        if (mBinaryStream == null) return;
+        try {
+            mBinaryStream.close();
+        } catch (IOException ioe) {
+            android.util.Log.e("AsyncJavaLogger", "Can't close binary log: " + ioe);
+        }
+        mBinaryStream = null;
+    }
+}
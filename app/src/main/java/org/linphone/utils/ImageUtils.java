@@ -21,6 +21,7 @@ package org.linphone.utils;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.graphics.Paint;
@@ -31,6 +32,9 @@ import android.net.Uri;
 import android.provider.MediaStore;
 import android.util.DisplayMetrics;
 import android.util.TypedValue;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import org.linphone.core.tools.Log;
 
 public class ImageUtils {
 
@@ -56,6 +60,66 @@ public class ImageUtils {
         return bm;
     }
 
+    /**
+     * Decodes the picture at no more than twice the requested size, then draws its centered
+     * square as a circle of that size. Must not be called from the UI thread.
+     *
+     * @return the round picture, or null if it couldn't be decoded
+     */
+    public static Bitmap getRoundBitmapFromUri(Context context, Uri fromPictureUri, int size) {
+        if (fromPictureUri == null || size <= 0) return null;
+
+        Bitmap bm = decodeSampledBitmapFromUri(context, fromPictureUri, size);
+        if (bm == null) return null;
+
+        int side = Math.min(bm.getWidth(), bm.getHeight());
+        int left = (bm.getWidth() - side) / 2;
+        int top = (bm.getHeight() - side) / 2;
+        Rect src = new Rect(left, top, left + side, top + side);
+
+        Bitmap output = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(output);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+        canvas.drawCircle(size / 2f, size / 2f, size / 2f, paint);
+        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
+        canvas.drawBitmap(bm, src, new Rect(0, 0, size, size), paint);
+        bm.recycle();
+        return output;
+    }
+
+    private static Bitmap decodeSampledBitmapFromUri(Context context, Uri uri, int size) {
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            InputStream is = context.getContentResolver().openInputStream(uri);
+            if (is == null) return null;
+            BitmapFactory.decodeStream(is, null, options);
+            is.close();
+            if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+            // Largest power of 2 that keeps the smallest side above the requested size
+            int sampleSize = 1;
+            int side = Math.min(options.outWidth, options.outHeight);
+            while (side / (sampleSize * 2) >= size) {
+                sampleSize *= 2;
+            }
+
+            options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            is = context.getContentResolver().openInputStream(uri);
+            if (is == null) return null;
+            Bitmap bm = BitmapFactory.decodeStream(is, null, options);
+            is.close();
+            return bm;
+        } catch (FileNotFoundException fnfe) {
+            // Contacts without picture
+            return null;
+        } catch (Exception e) {
+            Log.w("[Image Utils] Can't decode picture ", uri, ": ", e);
+            return null;
+        }
+    }
+
     public static Bitmap getRoundBitmap(Bitmap bitmap) {
         Bitmap output =
                 Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(), Bitmap.Config.ARGB_8888);
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone.utils;
+
+/**
+ * Fixed memory histogram of durations in microseconds. Like HdrHistogram, values are stored in
+ * buckets whose width doubles with each power of two, split in sub buckets, which gives a relative
+ * error of about 6% whatever the magnitude of the value.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+
+    private final String mName;
+    private final long[] mCounts = new long[BUCKETS];
+    private long mTotalCount;
+    private long mMax;
+
+    public LatencyHistogram(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public synchronized void record(long valueMicros) {
+        if (valueMicros < 0) return;
+        mCounts[indexFor(valueMicros)] += 1;
+        mTotalCount += 1;
+        if (valueMicros > mMax) {
+            mMax = valueMicros;
+        }
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts[i] = 0;
+        }
+        mTotalCount = 0;
+        mMax = 0;
+    }
+
+    public synchronized long getTotalCount() {
+        return mTotalCount;
+    }
+
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    /** Returns the smallest recorded value such as percentile % of values are lower or equal. */
+    public synchronized long getValueAtPercentile(double percentile) {
+        if (mTotalCount == 0) return 0;
+
+        long target = (long) Math.ceil(mTotalCount * Math.min(percentile, 100.0) / 100.0);
+        target = Math.max(target, 1);
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += mCounts[i];
+            if (count >= target) {
+                return Math.min(highestValueFor(i), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return mName
+                + ": count="
+                + mTotalCount
+                + " p50="
+                + getValueAtPercentile(50)
+                + "us p90="
+                + getValueAtPercentile(90)
+                + "us p99="
+                + getValueAtPercentile(99)
+                + "us max="
+                + mMax
+                + "us";
+    }
+
+    private static int indexFor(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> shift); // Between HALF_SUB_BUCKETS and SUB_BUCKETS - 1
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (subBucket - HALF_SUB_BUCKETS);
+    }
+
+    private static long highestValueFor(int index) {
+        if (index < SUB_BUCKETS) return index;
+
+        int offset = index - SUB_BUCKETS;
+        int shift = offset / HALF_SUB_BUCKETS + 1;
+        long subBucket = offset % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
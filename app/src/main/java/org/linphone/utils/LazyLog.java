@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.linphone.core.tools.Log;
+
+/**
+ * Debug logs for hot loops. Arguments are given separately instead of being concatenated by the
+ * caller, and are only turned into a string if debug logs are enabled. Arguments that are costly
+ * to compute can be wrapped in an {@link Arg}, which will only be evaluated if needed.
+ *
+ * <p>Fixed arity overloads avoid allocating a varargs array for each call when logs are off.
+ */
+public class LazyLog {
+    private static volatile boolean sDebugEnabled = false;
+    private static final AtomicLong sSkippedCount = new AtomicLong();
+
+    /** A log argument computed only if the line is really logged. */
+    public interface Arg {
+        Object get();
+    }
+
+    public static void setDebugEnabled(boolean enabled) {
+        sDebugEnabled = enabled;
+    }
+
+    public static boolean isDebugEnabled() {
+        return sDebugEnabled;
+    }
+
+    /** Number of debug lines that didn't have to be built since the app started. */
+    public static long getSkippedCount() {
+        return sSkippedCount.get();
+    }
+
+    public static void d(Object a) {
+        if (skip()) return;
+        Log.d(resolve(a));
+    }
+
+    public static void d(Object a, Object b) {
+        if (skip()) return;
+        Log.d(resolve(a), resolve(b));
+    }
+
+    public static void d(Object a, Object b, Object c) {
+        if (skip()) return;
+        Log.d(resolve(a), resolve(b), resolve(c));
+    }
+
+    public static void d(Object a, Object b, Object c, Object d) {
+        if (skip()) return;
+        Log.d(resolve(a), resolve(b), resolve(c), resolve(d));
+    }
+
+    public static void d(Object a, Object b, Object c, Object d, Object e) {
+        if (skip()) return;
+        Log.d(resolve(a), resolve(b), resolve(c), resolve(d), resolve(e));
+    }
+
+    private static boolean skip() {
+        if (sDebugEnabled) return false;
+        sSkippedCount.incrementAndGet();
+        return true;
+    }
+
+    private static Object resolve(Object arg) {
+        if (arg instanceof Arg) {
+            return ((Arg) arg).get();
+        }
+        return arg;
+    }
+}
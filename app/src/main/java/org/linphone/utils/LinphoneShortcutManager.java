@@ -23,6 +23,7 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ShortcutInfo;
+import android.content.pm.ShortcutManager;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Icon;
 import android.util.ArraySet;
@@ -31,17 +32,20 @@ import org.linphone.R;
 import org.linphone.chat.ChatActivity;
 import org.linphone.contacts.ContactsActivity;
 import org.linphone.contacts.LinphoneContact;
+import org.linphone.contacts.views.AvatarLoader;
 import org.linphone.core.tools.Log;
 
 @TargetApi(25)
 public class LinphoneShortcutManager {
     private Context mContext;
     private Set<String> mCategories;
+    private final int mIconSize;
 
     public LinphoneShortcutManager(Context context) {
         mContext = context;
         mCategories = new ArraySet<>();
         mCategories.add(ShortcutInfo.SHORTCUT_CATEGORY_CONVERSATION);
+        mIconSize = context.getSystemService(ShortcutManager.class).getIconMaxWidth();
     }
 
     public void destroy() {
@@ -52,10 +56,7 @@ public class LinphoneShortcutManager {
             LinphoneContact contact, String chatRoomAddress) {
         if (contact == null) return null;
 
-        Bitmap bm = null;
-        if (contact.getThumbnailUri() != null) {
-            bm = ImageUtils.getRoundBitmapFromUri(mContext, contact.getThumbnailUri());
-        }
+        Bitmap bm = AvatarLoader.getRoundPicture(mContext, contact, mIconSize);
         Icon icon =
                 bm == null
                         ? Icon.createWithResource(mContext, R.drawable.avatar)
@@ -84,10 +85,7 @@ public class LinphoneShortcutManager {
     public ShortcutInfo createContactShortcutInfo(LinphoneContact contact) {
         if (contact == null) return null;
 
-        Bitmap bm = null;
-        if (contact.getThumbnailUri() != null) {
-            bm = ImageUtils.getRoundBitmapFromUri(mContext, contact.getThumbnailUri());
-        }
+        Bitmap bm = AvatarLoader.getRoundPicture(mContext, contact, mIconSize);
         Icon icon =
                 bm == null
                         ? Icon.createWithResource(mContext, R.drawable.avatar)
@@ -65,6 +65,7 @@ public final class LinphoneUtils {
     private LinphoneUtils() {}
 
     public static void configureLoggingService(boolean isDebugEnabled, String appName) {
+        LazyLog.setDebugEnabled(isDebugEnabled);
         if (!LinphonePreferences.instance().useJavaLogger()) {
             Factory.instance().enableLogCollection(LogCollectionState.Enabled);
             Factory.instance().setDebugMode(isDebugEnabled, appName);
@@ -83,6 +84,7 @@ public final class LinphoneUtils {
                     Factory.instance()
                             .getLoggingService()
                             .removeListener(LinphoneContext.instance().getJavaLoggingService());
+                    LinphoneContext.instance().getJavaLoggingService().stop();
                 }
             }
         }
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2010-2019 Belledonne Communications SARL.
+ *
+ * This file is part of linphone-android
+ * (see https://www.linphone.org).
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.linphone.utils;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Printer;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import org.linphone.core.tools.Log;
+
+/**
+ * Measures how long the main thread is busy. The main looper message logging is used to time
+ * every dispatched message, a heartbeat posted from a background thread measures how long a
+ * message waits before being dispatched, and a stack sample of the main thread is taken each time
+ * a message runs for longer than the stall threshold.
+ */
+public class MainThreadWatchdog implements Printer {
+    private static final String DUMP_FILE_NAME = "main_thread_watchdog.txt";
+    private static final long HEARTBEAT_INTERVAL = 1000; // ms
+    private static final int MAX_STALL_SAMPLES = 10;
+
+    private final String mDumpDirectory;
+    private final long mStallThreshold;
+    private final LatencyHistogram mDispatchHistogram;
+    private final LatencyHistogram mLatencyHistogram;
+    private final List<LatencyHistogram> mExtraHistograms;
+    private final ArrayDeque<String> mStallSamples;
+    private final Handler mMainHandler;
+    private HandlerThread mThread;
+    private Handler mHandler;
+
+    private long mDispatchStart;
+    private long mStallCount;
+    private long mHeartbeatPostTime;
+
+    private final Runnable mStackSampler =
+            new Runnable() {
+                @Override
+                public void run() {
+                    sampleMainThreadStack();
+                }
+            };
+
+    private final Runnable mHeartbeat =
+            new Runnable() {
+                @Override
+                public void run() {
+                    long latency = SystemClock.uptimeMillis() - mHeartbeatPostTime;
+                    mLatencyHistogram.record(latency * 1000);
+                    if (mHandler != null) {
+                        mHandler.postDelayed(mHeartbeatPoster, HEARTBEAT_INTERVAL);
+                    }
+                }
+            };
+
+    private final Runnable mHeartbeatPoster =
+            new Runnable() {
+                @Override
+                public void run() {
+                    mHeartbeatPostTime = SystemClock.uptimeMillis();
+                    mMainHandler.post(mHeartbeat);
+                }
+            };
+
+    public MainThreadWatchdog(String dumpDirectory, long stallThresholdMillis) {
+        mDumpDirectory = dumpDirectory;
+        mStallThreshold = stallThresholdMillis;
+        mDispatchHistogram = new LatencyHistogram("Main looper message dispatch");
+        mLatencyHistogram = new LatencyHistogram("Main looper message latency");
+        mExtraHistograms = new ArrayList<>();
+        mStallSamples = new ArrayDeque<>();
+        mMainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    public synchronized void start() {
+        if (mThread != null) return;
+
+        mThread = new HandlerThread("Main thread watchdog");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        Looper.getMainLooper().setMessageLogging(this);
+        mHandler.post(mHeartbeatPoster);
+        Log.i("[Watchdog] Started with a stall threshold of " + mStallThreshold + "ms");
+    }
+
+    public synchronized void stop() {
+        if (mThread == null) return;
+
+        Looper.getMainLooper().setMessageLogging(null);
+        mMainHandler.removeCallbacks(mHeartbeat);
+        mHandler.removeCallbacksAndMessages(null);
+        mThread.quitSafely();
+        mThread = null;
+        mHandler = null;
+        Log.i("[Watchdog] Stopped");
+    }
+
+    /** Adds an histogram recorded elsewhere (for example Core iterate durations) to the dumps. */
+    public synchronized void addHistogram(LatencyHistogram histogram) {
+        if (!mExtraHistograms.contains(histogram)) {
+            mExtraHistograms.add(histogram);
+        }
+    }
+
+    @Override
+    public void println(String x) {
+        // Called by the main looper before and after each message
+        Handler handler = mHandler;
+        if (handler == null) return;
+
+        if (x.startsWith(">>>>>")) {
+            mDispatchStart = SystemClock.uptimeMillis();
+            handler.postDelayed(mStackSampler, mStallThreshold);
+        } else if (x.startsWith("<<<<<")) {
+            handler.removeCallbacks(mStackSampler);
+            long duration = SystemClock.uptimeMillis() - mDispatchStart;
+            mDispatchHistogram.record(duration * 1000);
+            if (duration >= mStallThreshold) {
+                mStallCount += 1;
+                Log.w("[Watchdog] Main thread was blocked for " + duration + "ms");
+            }
+        }
+    }
+
+    private void sampleMainThreadStack() {
+        StackTraceElement[] stack = Looper.getMainLooper().getThread().getStackTrace();
+        StringBuilder sb = new StringBuilder();
+        sb.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US).format(new Date()))
+                .append(" main thread busy for more than ")
+                .append(mStallThreshold)
+                .append("ms\n");
+        for (StackTraceElement element : stack) {
+            sb.append("\tat ").append(element).append('\n');
+        }
+
+        String sample = sb.toString();
+        Log.w("[Watchdog] " + sample);
+        synchronized (mStallSamples) {
+            if (mStallSamples.size() >= MAX_STALL_SAMPLES) {
+                mStallSamples.removeFirst();
+            }
+            mStallSamples.addLast(sample);
+        }
+    }
+
+    public synchronized String getReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Stalls longer than ")
+                .append(mStallThreshold)
+                .append("ms: ")
+                .append(mStallCount)
+                .append('\n');
+        sb.append(mDispatchHistogram).append('\n');
+        sb.append(mLatencyHistogram).append('\n');
+        for (LatencyHistogram histogram : mExtraHistograms) {
+            sb.append(histogram).append('\n');
+        }
+        synchronized (mStallSamples) {
+            for (String sample : mStallSamples) {
+                sb.append('\n').append(sample);
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Writes the report in the log collection directory and to the logs. */
+    public void dump() {
+        String report = getReport();
+        Log.i("[Watchdog] " + report);
+
+        File file = new File(mDumpDirectory, DUMP_FILE_NAME);
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(file, false);
+            writer.write(report);
+        } catch (IOException ioe) {
+            Log.e("[Watchdog] Failed to write report to " + file.getAbsolutePath() + ": " + ioe);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ioe) {
+                    Log.e("[Watchdog] Failed to close " + file.getAbsolutePath() + ": " + ioe);
+                }
+            }
+        }
+    }
+}
@@ -20,12 +20,17 @@
 package org.linphone.utils;
 
 import android.content.Context;
+import android.os.SystemClock;
 import java.lang.reflect.Constructor;
 import org.linphone.R;
 import org.linphone.core.tools.Log;
 
 public class PushNotificationUtils {
+    // Older pushes are considered unrelated to the next incoming call
+    private static final long PUSH_MAX_AGE = 60000; // ms
+
     private static PushHelperInterface mHelper;
+    private static volatile long sPushReceivedTime = -1;
 
     public static void init(Context context) {
         mHelper = null;
@@ -57,6 +62,21 @@ public class PushNotificationUtils {
         return mHelper.isAvailable(context);
     }
 
+    /** Remembers when the last push was received, to measure how long it took to ring. */
+    public static void onPushReceived() {
+        sPushReceivedTime = SystemClock.elapsedRealtime();
+    }
+
+    /** Returns the delay since the last push and forgets it, or -1 if there is none. */
+    public static long consumePushReceivedDelay() {
+        long received = sPushReceivedTime;
+        sPushReceivedTime = -1;
+        if (received < 0) return -1;
+
+        long delay = SystemClock.elapsedRealtime() - received;
+        return delay <= PUSH_MAX_AGE ? delay : -1;
+    }
+
     public interface PushHelperInterface {
         void init(Context context);
 
@@ -95,6 +95,20 @@ public abstract class SelectableAdapter<VH extends RecyclerView.ViewHolder>
         return items;
     }
 
+    /**
+     * Replaces the selection, for example once the selected items have moved
+     *
+     * @param positions Positions of the items to select
+     */
+    protected void setSelectedItems(List<Integer> positions) {
+        mSelectedItems.clear();
+        for (int position : positions) {
+            mSelectedItems.put(position, true);
+        }
+        mListHelper.updateSelectionButtons(
+                getSelectedItemCount() == 0, getSelectedItemCount() == getItemCount());
+    }
+
     public void selectAll() {
         for (int i = 0; i < getItemCount(); i++) {
             mSelectedItems.put(i, true);